@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link LxHttpClient} against a local HTTP server, which stands in for the Miniserver.
+ *
+ * @author agent - initial commit
+ *
+ */
+public class LxHttpClientTest {
+    private static final String COMMAND = "jdev/sps/io/0b734138-037d-034e-ffff403fb0c34b9e/On";
+    private static final long TIMEOUT = 5;
+
+    private Server server;
+    private LxHttpClient client;
+    private volatile int status;
+    private volatile String body;
+    private volatile String path;
+    private volatile String authorization;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException {
+                path = request.getRequestURI();
+                authorization = request.getHeader("Authorization");
+                response.setStatus(status);
+                response.setContentType("application/json");
+                response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        client = new LxHttpClient(1, InetAddress.getByName("127.0.0.1"), connector.getLocalPort(), "admin", "secret");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        server.stop();
+    }
+
+    @Test
+    public void acknowledgedCommand() throws Exception {
+        respond(200, 200);
+        client.send(COMMAND, TIMEOUT).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/" + COMMAND, path);
+        assertEquals("Basic YWRtaW46c2VjcmV0", authorization);
+    }
+
+    @Test
+    public void rejectedCommand() throws Exception {
+        respond(200, 500);
+        assertFailed("Miniserver rejected command with code 500");
+    }
+
+    @Test
+    public void httpError() throws Exception {
+        respond(503, 200);
+        assertFailed("Miniserver HTTP response status 503");
+    }
+
+    @Test
+    public void unexpectedResponse() throws Exception {
+        status = 200;
+        body = "<html>not a Miniserver</html>";
+        assertFailed("Unexpected Miniserver HTTP response");
+    }
+
+    @Test
+    public void consecutiveCommands() throws Exception {
+        respond(200, 200);
+        for (int i = 0; i < 3; i++) {
+            client.send(COMMAND, TIMEOUT).get(TIMEOUT, TimeUnit.SECONDS);
+        }
+        assertEquals("/" + COMMAND, path);
+    }
+
+    private void respond(int httpStatus, int code) {
+        status = httpStatus;
+        body = "{\"LL\": {\"control\": \"dev/sps/io/0b734138-037d-034e-ffff403fb0c34b9e/On\", \"value\": \"1\", "
+                + "\"Code\": \"" + code + "\"}}";
+    }
+
+    private void assertFailed(String message) throws Exception {
+        try {
+            client.send(COMMAND, TIMEOUT).get(TIMEOUT, TimeUnit.SECONDS);
+            fail("Command should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+}
@@ -8,6 +8,8 @@
  */
 package org.openhab.binding.loxone;
 
+import java.net.URI;
+
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 
 /**
@@ -24,6 +26,16 @@ public class LoxoneBindingConstants {
 
     // Channel IDs are created dynamically in runtime
 
+    // Channel configuration parameters
+    public static final URI CHANNEL_CONFIG_STATE = URI.create("channel-type:loxone:state");
+    public static final URI CHANNEL_CONFIG_ANALOG = URI.create("channel-type:loxone:analog");
+    public static final String CHANNEL_PARAM_SKIP_UNCHANGED = "skipUnchanged";
+    public static final String CHANNEL_PARAM_DEADBAND = "deadband";
+    public static final String CHANNEL_PARAM_DEADBAND_PERCENT = "deadbandPercent";
+    public static final String CHANNEL_PARAM_MIN_INTERVAL = "minInterval";
+    public static final String CHANNEL_PARAM_MAX_INTERVAL = "maxInterval";
+    public static final String CHANNEL_PARAM_QUIET_INTERVAL = "quietInterval";
+
     // Miniserver properties and parameters
     public static final String MINISERVER_PARAM_HOST = "host";
     public static final String MINISERVER_PARAM_PORT = "port";
@@ -58,6 +58,30 @@ public class LoxoneMiniserverConfig {
      * Time in seconds between connection close (as a result of some communication error) and next connection attempt
      */
     public int comErrorDelay;
+    /**
+     * Keep only the last received value of each state until it is processed, instead of processing every update
+     */
+    public boolean conflateUpdates;
+    /**
+     * Number of events that can wait for processing by the server thread
+     */
+    public int eventQueueSize;
+    /**
+     * The way server thread waits for new events: blocking, yielding or spinning
+     */
+    public String eventQueueWait;
+    /**
+     * Send commands over a separate websocket connection
+     */
+    public boolean commandConnection;
+    /**
+     * Send commands over HTTP when websocket is not running or is busy
+     */
+    public boolean httpFallback;
+    /**
+     * Authenticate with a token kept between connections, instead of user's credentials
+     */
+    public boolean tokenAuthentication;
     /**
      * Websocket client's max binary message size in kB
      */
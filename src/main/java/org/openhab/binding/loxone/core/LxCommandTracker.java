@@ -0,0 +1,339 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table of commands sent to the Miniserver, which wait for the Miniserver's acknowledgement.
+ * <p>
+ * Miniserver responds to each command sent to a control with a JSON response, that contains the command path and
+ * result code. Pending commands are kept here by their path, with the same commands kept in the order they were sent.
+ * When a response arrives, the oldest command with the same path is completed with success (code 200) or with an
+ * error, and its round-trip time is recorded. A command that does not get a response in time is completed with a
+ * {@link TimeoutException}.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxCommandTracker {
+    private final int debugId;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Deque<PendingCommand>> pending = new HashMap<>();
+
+    private long acknowledged = 0;
+    private long failed = 0;
+    private long timedOut = 0;
+    private long totalRoundTripNanos = 0;
+    private long maxRoundTripNanos = 0;
+
+    private Logger logger = LoggerFactory.getLogger(LxCommandTracker.class);
+
+    /**
+     * A command waiting for acknowledgement
+     *
+     * @author agent - initial commit
+     *
+     */
+    private class PendingCommand {
+        private final String key;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final long sentNanos = System.nanoTime();
+        private ScheduledFuture<?> timeout;
+
+        PendingCommand(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Create a new command tracker
+     *
+     * @param debugId
+     *            instance of the client used for debugging purposes only
+     * @param scheduler
+     *            scheduler to run command timeouts
+     */
+    LxCommandTracker(int debugId, ScheduledExecutorService scheduler) {
+        this.debugId = debugId;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Start tracking a command, which is about to be sent to the Miniserver
+     *
+     * @param command
+     *            command as sent to the Miniserver
+     * @param timeoutSeconds
+     *            time to wait for the acknowledgement, in seconds
+     * @return
+     *         future completed when the command is acknowledged by the Miniserver
+     */
+    CompletableFuture<Void> add(String command, long timeoutSeconds) {
+        PendingCommand cmd = new PendingCommand(normalize(command));
+        synchronized (this) {
+            Deque<PendingCommand> commands = pending.get(cmd.key);
+            if (commands == null) {
+                commands = new ArrayDeque<>(1);
+                pending.put(cmd.key, commands);
+            }
+            commands.add(cmd);
+            // scheduled when the command is already pending and under the lock, so a response can always cancel it
+            cmd.timeout = scheduler.schedule(() -> {
+                if (remove(cmd)) {
+                    synchronized (this) {
+                        timedOut++;
+                    }
+                    logger.debug("[{}] Command {} not acknowledged in {} s", debugId, command, timeoutSeconds);
+                    cmd.result.completeExceptionally(
+                            new TimeoutException("Miniserver did not acknowledge command " + command));
+                }
+            }, timeoutSeconds, TimeUnit.SECONDS);
+        }
+        return cmd.result;
+    }
+
+    /**
+     * Complete the oldest pending command with given path, when Miniserver's response is received
+     *
+     * @param control
+     *            command path returned by the Miniserver in the response
+     * @param code
+     *            result code returned by the Miniserver
+     * @return
+     *         true if a pending command was found for the response
+     */
+    boolean acknowledge(String control, int code) {
+        PendingCommand cmd;
+        long roundTrip;
+        synchronized (this) {
+            String key = normalize(control);
+            Deque<PendingCommand> commands = pending.get(key);
+            if (commands == null) {
+                return false;
+            }
+            cmd = commands.poll();
+            if (commands.isEmpty()) {
+                pending.remove(key);
+            }
+            if (cmd == null) {
+                return false;
+            }
+            roundTrip = System.nanoTime() - cmd.sentNanos;
+            if (code == 200) {
+                acknowledged++;
+                totalRoundTripNanos += roundTrip;
+                if (roundTrip > maxRoundTripNanos) {
+                    maxRoundTripNanos = roundTrip;
+                }
+            } else {
+                failed++;
+            }
+        }
+        cmd.timeout.cancel(false);
+        if (code == 200) {
+            logger.debug("[{}] Command {} acknowledged in {} ms", debugId, control,
+                    TimeUnit.NANOSECONDS.toMillis(roundTrip));
+            cmd.result.complete(null);
+        } else {
+            logger.debug("[{}] Command {} rejected with code {}", debugId, control, code);
+            cmd.result.completeExceptionally(new IOException("Miniserver rejected command with code " + code));
+        }
+        return true;
+    }
+
+    /**
+     * Stop tracking a command, which could not be sent
+     *
+     * @param result
+     *            future returned when tracking of the command started
+     * @param error
+     *            reason of the failure
+     */
+    void fail(CompletableFuture<Void> result, Throwable error) {
+        PendingCommand found = null;
+        synchronized (this) {
+            for (Deque<PendingCommand> commands : pending.values()) {
+                if (found != null) {
+                    break;
+                }
+                for (PendingCommand cmd : commands) {
+                    if (cmd.result == result) {
+                        found = cmd;
+                        break;
+                    }
+                }
+            }
+            if (found == null || !remove(found)) {
+                return;
+            }
+            failed++;
+        }
+        found.timeout.cancel(false);
+        found.result.completeExceptionally(error);
+    }
+
+    /**
+     * Record result of a command, which was sent and acknowledged outside of this table (e.g. over HTTP), so the
+     * statistics include all commands
+     *
+     * @param sentNanos
+     *            time when the command was sent, from {@link System#nanoTime()}
+     * @param error
+     *            reason of the failure or null if the command was acknowledged
+     */
+    void record(long sentNanos, Throwable error) {
+        long roundTrip = System.nanoTime() - sentNanos;
+        synchronized (this) {
+            if (error == null) {
+                acknowledged++;
+                totalRoundTripNanos += roundTrip;
+                if (roundTrip > maxRoundTripNanos) {
+                    maxRoundTripNanos = roundTrip;
+                }
+            } else if (isTimeout(error)) {
+                timedOut++;
+            } else {
+                failed++;
+            }
+        }
+    }
+
+    /**
+     * Fail all pending commands, when connection to the Miniserver is closed
+     *
+     * @param reason
+     *            reason of closing the connection
+     */
+    void failAll(String reason) {
+        List<PendingCommand> commands = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<PendingCommand> deque : pending.values()) {
+                commands.addAll(deque);
+            }
+            pending.clear();
+            failed += commands.size();
+        }
+        for (PendingCommand cmd : commands) {
+            cmd.timeout.cancel(false);
+            cmd.result.completeExceptionally(new IOException(reason));
+        }
+    }
+
+    /**
+     * Get number of commands acknowledged by the Miniserver
+     *
+     * @return
+     *         number of acknowledged commands
+     */
+    synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Get number of commands rejected by the Miniserver or not sent due to communication error
+     *
+     * @return
+     *         number of failed commands
+     */
+    synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get number of commands not acknowledged by the Miniserver in time
+     *
+     * @return
+     *         number of timed out commands
+     */
+    synchronized long getTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Get average time between sending a command and receiving its acknowledgement
+     *
+     * @return
+     *         average round-trip time in microseconds, 0 if no command was acknowledged
+     */
+    synchronized long getAverageRoundTrip() {
+        return acknowledged == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRoundTripNanos / acknowledged);
+    }
+
+    /**
+     * Get the longest time between sending a command and receiving its acknowledgement
+     *
+     * @return
+     *         maximum round-trip time in microseconds
+     */
+    synchronized long getMaxRoundTrip() {
+        return TimeUnit.NANOSECONDS.toMicros(maxRoundTripNanos);
+    }
+
+    private synchronized boolean remove(PendingCommand cmd) {
+        Deque<PendingCommand> commands = pending.get(cmd.key);
+        if (commands == null) {
+            return false;
+        }
+        for (Iterator<PendingCommand> it = commands.iterator(); it.hasNext();) {
+            if (it.next() == cmd) {
+                it.remove();
+                if (commands.isEmpty()) {
+                    pending.remove(cmd.key);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bring command path to a common form. Commands are sent as 'jdev/sps/io/...' and Miniserver responds with either
+     * 'jdev/sps/io/...' or 'dev/sps/io/...', with UUID in any case.
+     *
+     * @param control
+     *            command path
+     * @return
+     *         normalized command path
+     */
+    private static String normalize(String control) {
+        String key = control.trim();
+        if (key.startsWith("/")) {
+            key = key.substring(1);
+        }
+        if (key.startsWith("j")) {
+            key = key.substring(1);
+        }
+        return key.toLowerCase();
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Copy of Miniserver's configuration (LoxAPP3.json file) kept on disk.
+ * <p>
+ * Each configuration file contains the time it was last modified, which Miniserver also returns in response to
+ * 'jdev/sps/LoxAPPversion3' command. When the time returned by the Miniserver is the same as in the cached file, the
+ * cached file can be used instead of downloading the configuration again.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxConfigCache {
+    private static final String FILE_NAME = "LoxAPP3.json";
+    private static final String VERSION_FIELD = "lastModified";
+
+    private final int debugId;
+    private final File file;
+    private final File temp;
+    private Writer pending = null;
+    private String version = null;
+    private boolean versionRead = false;
+
+    private Logger logger = LoggerFactory.getLogger(LxConfigCache.class);
+
+    /**
+     * Create a cache of Miniserver's configuration
+     *
+     * @param debugId
+     *            instance of the client used for debugging purposes only
+     * @param folder
+     *            folder where configuration file is kept
+     */
+    LxConfigCache(int debugId, File folder) {
+        this.debugId = debugId;
+        this.file = new File(folder, FILE_NAME);
+        this.temp = new File(folder, FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Get version of cached configuration. Only the beginning of the file is read to find the version.
+     *
+     * @return
+     *         time the cached configuration was last modified or null if there is no cached configuration
+     */
+    synchronized String getVersion() {
+        if (!versionRead) {
+            versionRead = true;
+            version = readVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Open cached configuration for reading
+     *
+     * @return
+     *         reader of cached configuration or null if it can't be read
+     */
+    synchronized Reader openReader() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to open cached configuration {}: {}", debugId, file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Start saving configuration, which is being received from the Miniserver. Returned reader passes all characters
+     * read from the source reader and writes them to a temporary file. The file replaces cached configuration, when
+     * {@link #commit(String)} is called after the whole configuration was read.
+     *
+     * @param source
+     *            reader of configuration received from the Miniserver
+     * @return
+     *         reader to use instead of the source reader
+     */
+    synchronized Reader saving(Reader source) {
+        discard();
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            logger.debug("[{}] Failed to create folder {}", debugId, dir);
+            return source;
+        }
+        try {
+            pending = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to write cached configuration to {}: {}", debugId, temp, e.getMessage());
+            return source;
+        }
+        Writer copy = pending;
+        return new FilterReader(source) {
+            @Override
+            public int read() throws IOException {
+                int c = super.read();
+                if (c >= 0) {
+                    copy.write(c);
+                }
+                return c;
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    copy.write(buffer, offset, count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Replace cached configuration with the configuration saved since {@link #saving(Reader)} was called. The file is
+     * renamed only after it was completely written, so an incomplete file is never used.
+     *
+     * @param configVersion
+     *            time the configuration was last modified, if null the configuration is not cached
+     */
+    synchronized void commit(String configVersion) {
+        if (pending == null) {
+            return;
+        }
+        if (configVersion == null) {
+            discard();
+            return;
+        }
+        try {
+            pending.close();
+            pending = null;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            version = configVersion;
+            versionRead = true;
+            logger.debug("[{}] Cached configuration version {}", debugId, configVersion);
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to save cached configuration to {}: {}", debugId, file, e.getMessage());
+            discard();
+        }
+    }
+
+    /**
+     * Stop saving configuration, when it could not be received completely
+     */
+    synchronized void discard() {
+        if (pending != null) {
+            try {
+                pending.close();
+            } catch (IOException e) {
+                logger.debug("[{}] Failed to close cached configuration {}: {}", debugId, temp, e.getMessage());
+            }
+            pending = null;
+        }
+        if (temp.isFile() && !temp.delete()) {
+            logger.debug("[{}] Failed to delete {}", debugId, temp);
+        }
+    }
+
+    /**
+     * Remove cached configuration
+     */
+    synchronized void clear() {
+        version = null;
+        versionRead = true;
+        if (file.isFile() && !file.delete()) {
+            logger.debug("[{}] Failed to delete cached configuration {}", debugId, file);
+        }
+    }
+
+    private String readVersion() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (VERSION_FIELD.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    return reader.nextString();
+                }
+                reader.skipValue();
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("[{}] Failed to read version of cached configuration {}: {}", debugId, file,
+                    e.getMessage());
+        }
+        return null;
+    }
+}
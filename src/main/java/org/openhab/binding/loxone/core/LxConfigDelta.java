@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Difference between the previous and a new configuration received from the Miniserver.
+ * <p>
+ * A control is changed, when its part of the configuration (including its states and subcontrols) is different than
+ * before, or when it was moved to another room or category, or its room or category was renamed. Subcontrols are
+ * reported together with their parent control.
+ *
+ * @author agent - initial commit
+ *
+ */
+public class LxConfigDelta {
+    private final Map<LxUuid, LxControl> added = new LinkedHashMap<>();
+    private final Map<LxUuid, LxControl> changed = new LinkedHashMap<>();
+    private final Map<LxUuid, LxControl> removed = new LinkedHashMap<>();
+
+    /**
+     * Get controls that did not exist in the previous configuration
+     *
+     * @return
+     *         added controls
+     */
+    public Collection<LxControl> getAdded() {
+        return Collections.unmodifiableCollection(added.values());
+    }
+
+    /**
+     * Get controls that exist in both configurations, but were changed
+     *
+     * @return
+     *         changed controls
+     */
+    public Collection<LxControl> getChanged() {
+        return Collections.unmodifiableCollection(changed.values());
+    }
+
+    /**
+     * Get controls that do not exist in the new configuration anymore
+     *
+     * @return
+     *         removed controls
+     */
+    public Collection<LxControl> getRemoved() {
+        return Collections.unmodifiableCollection(removed.values());
+    }
+
+    /**
+     * Check if configuration of any control changed
+     *
+     * @return
+     *         true if no control was added, changed or removed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    void addAdded(LxControl control) {
+        added.put(control.getUuid(), control);
+    }
+
+    void addChanged(LxControl control) {
+        if (!added.containsKey(control.getUuid())) {
+            changed.put(control.getUuid(), control);
+        }
+    }
+
+    void addRemoved(LxControl control) {
+        if (added.remove(control.getUuid()) != null) {
+            // added by a configuration that was not finished, so it was never reported
+            return;
+        }
+        changed.remove(control.getUuid());
+        removed.put(control.getUuid(), control);
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added.size() + ", changed " + changed.size() + ", removed " + removed.size();
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Consumer;
+
+import org.apache.commons.codec.binary.Hex;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Streaming parser of Miniserver's configuration (LoxAPP3.json file).
+ * <p>
+ * Instead of building the whole configuration as one object tree, rooms, categories and controls are parsed one by
+ * one, as they are read from the stream, and passed to a consumer. Only one of them is kept in memory by the parser
+ * at a time. All other parts of the configuration, except for the modification time and global information, are
+ * skipped without parsing.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxConfigReader {
+    private final Gson gson = new Gson();
+    private final MessageDigest digest;
+
+    LxConfigReader() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            md = null;
+        }
+        digest = md;
+    }
+
+    /**
+     * Parse configuration from a stream
+     *
+     * @param reader
+     *            stream with configuration in JSON format
+     * @param pieces
+     *            consumer of parsed {@link LxJsonApp3.LxJsonRoom}, {@link LxJsonApp3.LxJsonCat} and
+     *            {@link LxJsonApp3.LxJsonControl} objects
+     * @return
+     *         configuration with modification time and global information only, without rooms, categories and
+     *         controls
+     * @throws IOException
+     *             when stream can't be read
+     * @throws JsonParseException
+     *             when configuration is malformed
+     */
+    LxJsonApp3 read(Reader reader, Consumer<Object> pieces) throws IOException {
+        LxJsonApp3 config = new LxJsonApp3();
+        JsonReader json = new JsonReader(reader);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                switch (name) {
+                    case "lastModified":
+                        if (json.peek() == JsonToken.STRING) {
+                            config.lastModified = json.nextString();
+                        } else {
+                            json.skipValue();
+                        }
+                        break;
+                    case "msInfo":
+                        config.msInfo = gson.fromJson(json, LxJsonApp3.LxJsonInfo.class);
+                        break;
+                    case "rooms":
+                        readMap(json, LxJsonApp3.LxJsonRoom.class, pieces);
+                        break;
+                    case "cats":
+                        readMap(json, LxJsonApp3.LxJsonCat.class, pieces);
+                        break;
+                    case "controls":
+                        readControls(json, pieces);
+                        break;
+                    default:
+                        json.skipValue();
+                        break;
+                }
+            }
+            json.endObject();
+        } catch (IllegalStateException e) {
+            throw new JsonParseException(e.getMessage(), e);
+        }
+        return config;
+    }
+
+    /**
+     * Parse a JSON object with controls. A fingerprint of JSON of each control is calculated, so it can be compared
+     * with the previous configuration of the control.
+     *
+     * @param json
+     *            JSON stream positioned at the map of controls
+     * @param pieces
+     *            consumer of parsed controls
+     * @throws IOException
+     *             when stream can't be read
+     */
+    private void readControls(JsonReader json, Consumer<Object> pieces) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.hasNext()) {
+            json.nextName();
+            JsonElement element = gson.fromJson(json, JsonElement.class);
+            LxJsonApp3.LxJsonControl control = gson.fromJson(element, LxJsonApp3.LxJsonControl.class);
+            if (control != null) {
+                control.fingerprint = fingerprint(element);
+                pieces.accept(control);
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Calculate a hash of JSON element
+     *
+     * @param element
+     *            JSON element
+     * @return
+     *         SHA-1 hash in hexadecimal form or null if it could not be calculated
+     */
+    private String fingerprint(JsonElement element) {
+        if (digest == null) {
+            return null;
+        }
+        digest.reset();
+        return Hex.encodeHexString(digest.digest(element.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parse a JSON object, which is a map of objects of one type, passing each object to the consumer
+     *
+     * @param json
+     *            JSON stream positioned at the map
+     * @param type
+     *            type of objects in the map
+     * @param pieces
+     *            consumer of parsed objects
+     * @throws IOException
+     *             when stream can't be read
+     */
+    private void readMap(JsonReader json, Type type, Consumer<Object> pieces) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.hasNext()) {
+            json.nextName();
+            Object piece = gson.fromJson(json, type);
+            if (piece != null) {
+                pieces.accept(piece);
+            }
+        }
+        json.endObject();
+    }
+}
@@ -11,6 +11,7 @@ package org.openhab.binding.loxone.core;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 import org.slf4j.Logger;
@@ -34,6 +35,7 @@ public abstract class LxControl {
     private String typeName = null;
     private LxContainer room;
     private LxCategory category;
+    private String fingerprint;
     private Map<String, LxControlState> states = new HashMap<String, LxControlState>();
 
     LxUuid uuid;
@@ -65,6 +67,32 @@ public abstract class LxControl {
         update(json, room, category);
     }
 
+    /**
+     * Build a command of an operation on this control. Controls build commands of their fixed operations once, when
+     * they are created, and send them with {@link #sendAction(String)}.
+     *
+     * @param operation
+     *            identifier of the operation
+     * @return
+     *         command to send to the Miniserver
+     */
+    String buildAction(String operation) {
+        return LxWsClient.buildAction(uuid, operation);
+    }
+
+    /**
+     * Send a command built with {@link #buildAction(String)} to the Miniserver
+     *
+     * @param action
+     *            command to send
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
+     */
+    CompletableFuture<Void> sendAction(String action) {
+        return socketClient.sendAction(action);
+    }
+
     /**
      * Obtain control's type name (e.g. switch, rollershutter) by which Miniserver recognizes it
      *
@@ -123,6 +151,16 @@ public abstract class LxControl {
         return name;
     }
 
+    /**
+     * Obtain hash of configuration this control was last updated with
+     *
+     * @return
+     *         hash of control's configuration or null if not known
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
     /**
      * Obtain UUID of this control
      *
@@ -191,6 +229,7 @@ public abstract class LxControl {
         logger.trace("Updating LxControl: {}", json.type);
 
         this.name = json.name;
+        this.fingerprint = json.fingerprint;
         this.room = room;
         this.category = category;
         uuid.setUpdate(true);
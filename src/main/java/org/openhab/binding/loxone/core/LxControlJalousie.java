@@ -8,7 +8,7 @@
  */
 package org.openhab.binding.loxone.core;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 
@@ -96,6 +96,9 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      */
     private static final String CMD_STOP = "Stop";
 
+    private final String actionFullUp;
+    private final String actionFullDown;
+    private final String actionStop;
     private double targetPosition = -1;
 
     /**
@@ -114,6 +117,9 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      */
     LxControlJalousie(LxWsClient client, LxUuid uuid, LxJsonControl json, LxContainer room, LxCategory category) {
         super(client, uuid, json, room, category);
+        actionFullUp = buildAction(CMD_FULL_UP);
+        actionFullDown = buildAction(CMD_FULL_DOWN);
+        actionStop = buildAction(CMD_STOP);
 
         LxControlState positionState = getState(STATE_POSITION);
         if (positionState != null) {
@@ -138,11 +144,12 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      * <p>
      * Sends a command to operate the rollershutter.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void fullUp() throws IOException {
-        socketClient.sendAction(uuid, CMD_FULL_UP);
+    public CompletableFuture<Void> fullUp() {
+        return sendAction(actionFullUp);
     }
 
     /**
@@ -150,11 +157,12 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      * <p>
      * Sends a command to operate the rollershutter.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void fullDown() throws IOException {
-        socketClient.sendAction(uuid, CMD_FULL_DOWN);
+    public CompletableFuture<Void> fullDown() {
+        return sendAction(actionFullDown);
     }
 
     /**
@@ -162,11 +170,12 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      * <p>
      * Sends a command to operate the rollershutter.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void stop() throws IOException {
-        socketClient.sendAction(uuid, CMD_STOP);
+    public CompletableFuture<Void> stop() {
+        return sendAction(actionStop);
     }
 
     /**
@@ -178,22 +187,24 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
      *
      * @param position
      *            end position to move jalousie to, floating point number from 0..1 (0-fully closed to 1-fully open)
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void moveToPosition(double position) throws IOException {
+    public CompletableFuture<Void> moveToPosition(double position) {
         double currentPosition = getPosition();
         if (currentPosition >= 0 && currentPosition <= 1) {
             if (currentPosition > position) {
                 logger.debug("Moving jalousie up from {} to {}", currentPosition, position);
                 targetPosition = position;
-                fullUp();
+                return fullUp();
             } else if (currentPosition < position) {
                 logger.debug("Moving jalousie down from {} to {}", currentPosition, position);
                 targetPosition = position;
-                fullDown();
+                return fullDown();
             }
         }
+        return CompletableFuture.completedFuture(null);
     }
 
     /**
@@ -225,11 +236,10 @@ public class LxControlJalousie extends LxControl implements LxControlStateListen
                 if (((up.getValue() == 1) && (currentPosition < targetPosition))
                         || ((down.getValue() == 1) && (currentPosition > targetPosition))) {
                     targetPosition = -1;
-                    try {
-                        stop();
-                    } catch (IOException e) {
+                    stop().exceptionally(e -> {
                         logger.debug("Error stopping jalousie when meeting target position.");
-                    }
+                        return null;
+                    });
                 }
             }
         }
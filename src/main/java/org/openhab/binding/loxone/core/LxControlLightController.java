@@ -8,11 +8,11 @@
  */
 package org.openhab.binding.loxone.core;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 
@@ -65,6 +65,11 @@ public class LxControlLightController extends LxControl implements LxControlStat
     private static final String CMD_PREVIOUS_SCENE = "minus";
     private static final int SCENE_ALL_ON = 9;
 
+    private final String actionOn;
+    private final String actionOff;
+    private final String actionNextScene;
+    private final String actionPreviousScene;
+    private final String[] actionScenes = new String[NUM_OF_SCENES];
     private Map<String, String> sceneNames = new TreeMap<String, String>();
     private boolean newSceneNames = false;
     private int movementScene = -1;
@@ -88,6 +93,13 @@ public class LxControlLightController extends LxControl implements LxControlStat
 
         super(client, uuid, json, room, category);
 
+        actionOn = buildAction(CMD_ON);
+        actionOff = buildAction(CMD_OFF);
+        actionNextScene = buildAction(CMD_NEXT_SCENE);
+        actionPreviousScene = buildAction(CMD_PREVIOUS_SCENE);
+        for (int scene = 0; scene < NUM_OF_SCENES; scene++) {
+            actionScenes[scene] = buildAction(Long.toString(scene));
+        }
         if (json.details != null) {
             this.movementScene = json.details.movementScene;
         }
@@ -113,6 +125,10 @@ public class LxControlLightController extends LxControl implements LxControlStat
 
         super.update(json, room, category);
 
+        // subcontrols not updated below are removed
+        for (LxControl control : subControls.values()) {
+            control.uuid.setUpdate(false);
+        }
         if (json.subControls != null) {
             for (LxJsonControl subControl : json.subControls.values()) {
                 // recursively create a subcontrol as a new control
@@ -155,41 +171,45 @@ public class LxControlLightController extends LxControl implements LxControlStat
     /**
      * Set all outputs to ON.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void allOn() throws IOException {
-        socketClient.sendAction(uuid, CMD_ON);
+    public CompletableFuture<Void> allOn() {
+        return sendAction(actionOn);
     }
 
     /**
      * Set all outputs to OFF.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void allOff() throws IOException {
-        socketClient.sendAction(uuid, CMD_OFF);
+    public CompletableFuture<Void> allOff() {
+        return sendAction(actionOff);
     }
 
     /**
      * Select next lighting scene.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void nextScene() throws IOException {
-        socketClient.sendAction(uuid, CMD_NEXT_SCENE);
+    public CompletableFuture<Void> nextScene() {
+        return sendAction(actionNextScene);
     }
 
     /**
      * Select previous lighting scene.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void previousScene() throws IOException {
-        socketClient.sendAction(uuid, CMD_PREVIOUS_SCENE);
+    public CompletableFuture<Void> previousScene() {
+        return sendAction(actionPreviousScene);
     }
 
     /**
@@ -197,15 +217,17 @@ public class LxControlLightController extends LxControl implements LxControlStat
      *
      * @param scene
      *            scene number to set (0-9)
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void setScene(int scene) throws IOException {
+    public CompletableFuture<Void> setScene(int scene) {
         if (scene == SCENE_ALL_ON) {
-            allOn();
+            return allOn();
         } else if (scene >= 0 && scene < NUM_OF_SCENES) {
-            socketClient.sendAction(uuid, Long.toString(scene));
+            return sendAction(actionScenes[scene]);
         }
+        return CompletableFuture.completedFuture(null);
     }
 
     /**
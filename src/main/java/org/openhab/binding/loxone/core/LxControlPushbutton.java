@@ -8,7 +8,7 @@
  */
 package org.openhab.binding.loxone.core;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 
@@ -30,6 +30,8 @@ public class LxControlPushbutton extends LxControlSwitch {
      */
     private static final String CMD_PULSE = "Pulse";
 
+    private final String actionPulse;
+
     /**
      * Create pushbutton control object.
      *
@@ -46,6 +48,7 @@ public class LxControlPushbutton extends LxControlSwitch {
      */
     LxControlPushbutton(LxWsClient client, LxUuid uuid, LxJsonControl json, LxContainer room, LxCategory category) {
         super(client, uuid, json, room, category);
+        actionPulse = buildAction(CMD_PULSE);
     }
 
     /**
@@ -65,10 +68,11 @@ public class LxControlPushbutton extends LxControlSwitch {
      * <p>
      * Sends a command to operate the pushbutton.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void pulse() throws IOException {
-        socketClient.sendAction(uuid, CMD_PULSE);
+    public CompletableFuture<Void> pulse() {
+        return sendAction(actionPulse);
     }
 }
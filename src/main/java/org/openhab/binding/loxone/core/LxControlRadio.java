@@ -9,9 +9,9 @@
 
 package org.openhab.binding.loxone.core;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 
@@ -43,6 +43,7 @@ public class LxControlRadio extends LxControl {
      */
     private static final String CMD_RESET = "reset";
     private Map<String, String> outputs;
+    private final String[] actionOutputs = new String[MAX_RADIO_OUTPUTS + 1];
 
     /**
      * Create radio-button control object.
@@ -60,6 +61,10 @@ public class LxControlRadio extends LxControl {
      */
     LxControlRadio(LxWsClient client, LxUuid uuid, LxJsonControl json, LxContainer room, LxCategory category) {
         super(client, uuid, json, room, category);
+        actionOutputs[0] = buildAction(CMD_RESET);
+        for (int output = 1; output <= MAX_RADIO_OUTPUTS; output++) {
+            actionOutputs[output] = buildAction(Long.toString(output));
+        }
         if (json.details.outputs != null) {
             outputs = new TreeMap<String, String>(json.details.outputs);
         } else {
@@ -89,15 +94,15 @@ public class LxControlRadio extends LxControl {
      *
      * @param output
      *            output number to activate
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void setOutput(int output) throws IOException {
-        if (output == 0) {
-            socketClient.sendAction(uuid, CMD_RESET);
-        } else if (output >= 1 && output <= MAX_RADIO_OUTPUTS) {
-            socketClient.sendAction(uuid, Long.toString(output));
+    public CompletableFuture<Void> setOutput(int output) {
+        if (output >= 0 && output <= MAX_RADIO_OUTPUTS) {
+            return sendAction(actionOutputs[output]);
         }
+        return CompletableFuture.completedFuture(null);
     }
 
     /**
@@ -20,6 +20,9 @@ import java.util.List;
  * Each state is identified by its own UUID and a name of the state. Names are proprietary to a particular type of the
  * control and as such are defined in {@link LxControl} child classes implementation (e.g. {@link LxControlSwitch}
  * Objects of this class are used to bind state updates received from the Miniserver to a control object.
+ * <p>
+ * State's values are not kept in this object. It is a view of a slot in {@link LxStateStore} of the server, which
+ * is assigned when the server processes Miniserver's configuration.
  *
  * @author Pawel Pieczul - initial commit
  *
@@ -27,10 +30,10 @@ import java.util.List;
 class LxControlState {
     private LxUuid uuid;
     private String name;
-    private double value = -1;
-    private String textValue = null;
     private LxControl control;
-    private List<LxControlStateListener> listeners = new ArrayList<LxControlStateListener>();
+    private LxStateStore store = null;
+    private int slot = -1;
+    private List<LxControlStateListener> listeners = null;
 
     /**
      * Create a control state object.
@@ -58,22 +61,9 @@ class LxControlState {
      *            current state's text value to set
      */
     void setValue(double value, String textValue) {
-        boolean changed = false;
-
         uuid.setUpdate(true);
 
-        if (this.value != value) {
-            this.value = value;
-            changed = true;
-        }
-
-        if ((textValue != null && this.textValue != null && !textValue.equals(this.textValue))
-                || (textValue != this.textValue)) {
-            this.textValue = textValue;
-            changed = true;
-        }
-
-        if (changed) {
+        if (store != null && store.set(slot, value, textValue) && listeners != null) {
             for (LxControlStateListener listener : listeners) {
                 listener.onStateChange(this);
             }
@@ -97,7 +87,10 @@ class LxControlState {
      *         current state's value
      */
     double getValue() {
-        return value;
+        if (store == null) {
+            return -1;
+        }
+        return store.getValue(slot);
     }
 
     /**
@@ -107,7 +100,36 @@ class LxControlState {
      *         current state's value
      */
     String getTextValue() {
-        return textValue;
+        if (store == null) {
+            return null;
+        }
+        return store.getText(slot);
+    }
+
+    /**
+     * Binds state to a slot in a state store. Previous value of the state is copied to the new slot.
+     *
+     * @param store
+     *            store that will keep state's values
+     * @param slot
+     *            slot assigned to the state in the store
+     */
+    void bind(LxStateStore store, int slot) {
+        if (this.store != null) {
+            store.copy(this.store, this.slot, slot);
+        }
+        this.store = store;
+        this.slot = slot;
+    }
+
+    /**
+     * Gets slot number assigned to the state in the state store
+     *
+     * @return
+     *         slot number or -1 if state is not bound to a store
+     */
+    int getSlot() {
+        return slot;
     }
 
     /**
@@ -160,6 +182,9 @@ class LxControlState {
      *            an object implementing state change listener interface
      */
     void addListener(LxControlStateListener listener) {
+        if (listeners == null) {
+            listeners = new ArrayList<LxControlStateListener>(1);
+        }
         listeners.add(listener);
     }
 
@@ -170,7 +195,9 @@ class LxControlState {
      *            listener object to remove
      */
     void removeListener(LxControlStateListener listener) {
-        listeners.remove(listener);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
     }
 
 }
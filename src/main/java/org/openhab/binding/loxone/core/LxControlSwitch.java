@@ -8,7 +8,7 @@
  */
 package org.openhab.binding.loxone.core;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import org.openhab.binding.loxone.core.LxJsonApp3.LxJsonControl;
 
@@ -45,6 +45,9 @@ public class LxControlSwitch extends LxControl {
      */
     private static final String CMD_OFF = "Off";
 
+    private final String actionOn;
+    private final String actionOff;
+
     /**
      * Create switch control object.
      *
@@ -61,6 +64,8 @@ public class LxControlSwitch extends LxControl {
      */
     LxControlSwitch(LxWsClient client, LxUuid uuid, LxJsonControl json, LxContainer room, LxCategory category) {
         super(client, uuid, json, room, category);
+        actionOn = buildAction(CMD_ON);
+        actionOff = buildAction(CMD_OFF);
     }
 
     /**
@@ -80,11 +85,12 @@ public class LxControlSwitch extends LxControl {
      * <p>
      * Sends a command to operate the switch.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void on() throws IOException {
-        socketClient.sendAction(uuid, CMD_ON);
+    public CompletableFuture<Void> on() {
+        return sendAction(actionOn);
     }
 
     /**
@@ -92,11 +98,12 @@ public class LxControlSwitch extends LxControl {
      * <p>
      * Sends a command to operate the switch.
      *
-     * @throws IOException
-     *             when something went wrong with communication
+     * @return
+     *         future completed when the Miniserver acknowledges the command or completed exceptionally when
+     *         something went wrong with communication
      */
-    public void off() throws IOException {
-        socketClient.sendAction(uuid, CMD_OFF);
+    public CompletableFuture<Void> off() {
+        return sendAction(actionOff);
     }
 
     /**
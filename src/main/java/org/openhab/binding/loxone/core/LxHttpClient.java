@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * HTTP client to send commands to Miniserver's controls, when websocket connection can't be used.
+ * <p>
+ * Miniserver accepts the same commands over HTTP as over the websocket ('jdev/sps/io/{uuid}/{command}') and answers
+ * them with the same JSON response. Jetty's HTTP client keeps connections to the Miniserver open between requests,
+ * so commands do not pay for a new connection each time. Credentials are sent with HTTP basic authentication, with
+ * the authorization header computed once, when the client is created. Unlike websocket login, which sends only a
+ * hash, this puts the password on the wire unencrypted, so the HTTP fallback is disabled by default.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxHttpClient {
+    private static final Gson GSON = new Gson();
+    private static final int MAX_CONNECTIONS = 2;
+    private static final long IDLE_TIMEOUT = 5 * 60 * 1000; // keep connections for 5 minutes
+
+    private final int debugId;
+    private final String baseUrl;
+    private final String authorization;
+    private HttpClient httpClient = null;
+
+    private Logger logger = LoggerFactory.getLogger(LxHttpClient.class);
+
+    /**
+     * Create HTTP client to send commands to a Miniserver
+     *
+     * @param debugId
+     *            instance of the client used for debugging purposes only
+     * @param host
+     *            IP address of the Miniserver
+     * @param port
+     *            web service port of the Miniserver
+     * @param user
+     *            user to authenticate
+     * @param password
+     *            password to authenticate
+     */
+    LxHttpClient(int debugId, InetAddress host, int port, String user, String password) {
+        this.debugId = debugId;
+        baseUrl = "http://" + host.getHostAddress() + ":" + port + "/";
+        authorization = "Basic "
+                + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a command to the Miniserver
+     *
+     * @param command
+     *            command path, as it would be sent over websocket (e.g. 'jdev/sps/io/{uuid}/{command}')
+     * @param timeout
+     *            time to wait for the Miniserver response, in seconds
+     * @return
+     *         future completed when the Miniserver acknowledges the command, completed exceptionally with an
+     *         {@link IOException} when the command could not be sent or Miniserver rejected it
+     */
+    CompletableFuture<Void> send(String command, long timeout) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        HttpClient client;
+        try {
+            client = start();
+        } catch (Exception e) {
+            logger.debug("[{}] Failed to start HTTP client: {}", debugId, e.getMessage());
+            result.completeExceptionally(new IOException("HTTP client not started", e));
+            return result;
+        }
+        logger.debug("[{}] Sending command over HTTP {}", debugId, command);
+        client.newRequest(baseUrl + command).method(HttpMethod.GET).header(HttpHeader.AUTHORIZATION, authorization)
+                .timeout(timeout, TimeUnit.SECONDS).send(new BufferingResponseListener() {
+                    @Override
+                    public void onComplete(Result response) {
+                        if (response.isFailed()) {
+                            Throwable error = response.getFailure();
+                            result.completeExceptionally(
+                                    error instanceof IOException ? error : new IOException(error.getMessage(), error));
+                            return;
+                        }
+                        int status = response.getResponse().getStatus();
+                        if (status != 200) {
+                            result.completeExceptionally(new IOException("Miniserver HTTP response status " + status));
+                            return;
+                        }
+                        try {
+                            LxJsonResponse resp = GSON.fromJson(getContentAsString(StandardCharsets.UTF_8),
+                                    LxJsonResponse.class);
+                            if (resp == null || resp.LL == null) {
+                                result.completeExceptionally(new IOException("Unexpected Miniserver HTTP response"));
+                            } else if (resp.LL.Code != 200) {
+                                result.completeExceptionally(
+                                        new IOException("Miniserver rejected command with code " + resp.LL.Code));
+                            } else {
+                                result.complete(null);
+                            }
+                        } catch (JsonSyntaxException e) {
+                            result.completeExceptionally(new IOException("Unexpected Miniserver HTTP response", e));
+                        }
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Stop the client and close all its connections to the Miniserver
+     */
+    synchronized void stop() {
+        if (httpClient != null) {
+            try {
+                httpClient.stop();
+            } catch (Exception e) {
+                logger.debug("[{}] Failed to stop HTTP client: {}", debugId, e.getMessage());
+            }
+            httpClient = null;
+        }
+    }
+
+    private synchronized HttpClient start() throws Exception {
+        if (httpClient == null) {
+            HttpClient client = new HttpClient();
+            client.setMaxConnectionsPerDestination(MAX_CONNECTIONS);
+            client.setIdleTimeout(IDLE_TIMEOUT);
+            client.setFollowRedirects(false);
+            client.start();
+            httpClient = client;
+        }
+        return httpClient;
+    }
+}
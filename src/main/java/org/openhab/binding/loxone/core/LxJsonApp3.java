@@ -20,6 +20,7 @@ import com.google.gson.JsonElement;
  */
 class LxJsonApp3 {
 
+    String lastModified;
     LxJsonInfo msInfo;
     Map<String, LxJsonControl> controls;
     Map<String, LxJsonRoom> rooms;
@@ -69,5 +70,7 @@ class LxJsonApp3 {
         LxJsonDetails details;
         Map<String, JsonElement> states;
         Map<String, LxJsonControl> subControls;
+        // hash of control's JSON, including its states and subcontrols, not part of JSON
+        transient String fingerprint;
     }
 }
@@ -8,10 +8,16 @@
  */
 package org.openhab.binding.loxone.core;
 
+import com.google.gson.JsonElement;
+import com.google.gson.annotations.SerializedName;
+
 /**
  * A JSON response to a call to send a command to Miniserver's control at
  * http://miniserver/jdev/sps/io/{uuid}/{command}.
  * <p>
+ * The same structure is used for responses to other requests, where value can be a string or a JSON object (e.g. a
+ * token) and the code may be named 'code'.
+ * <p>
  * This structure is used for parsing with Gson library.
  *
  * @author Pawel Pieczul - initial commit
@@ -22,7 +28,8 @@ class LxJsonResponse {
 
     class LxJsonLL {
         String control;
-        String value;
+        JsonElement value;
+        @SerializedName(value = "Code", alternate = { "code" })
         int Code;
     }
 }
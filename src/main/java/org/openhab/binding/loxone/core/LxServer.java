@@ -8,18 +8,23 @@
  */
 package org.openhab.binding.loxone.core;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
+
 import org.openhab.binding.loxone.core.LxServerEvent.EventType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +65,8 @@ public class LxServer {
     @SuppressWarnings("unused")
     private String roomTitle, categoryTitle;
     private int firstConDelay = 1, connectErrDelay = 10, userErrorDelay = 60, comErrorDelay = 30;
+    private volatile boolean conflateUpdates = false;
+    private volatile boolean commandConnection = false;
 
     // Data structures
     private Set<LxUuid> uuids = new HashSet<LxUuid>();
@@ -67,18 +74,45 @@ public class LxServer {
     private Map<LxUuid, LxContainer> rooms = new HashMap<LxUuid, LxContainer>();
     private Map<LxUuid, LxCategory> categories = new HashMap<LxUuid, LxCategory>();
     private Map<LxUuid, LxControlState> states = new HashMap<LxUuid, LxControlState>();
+    // controls received before their room or category, while configuration is streamed
+    private List<LxJsonApp3.LxJsonControl> deferredControls = new ArrayList<>();
+    private boolean configInProgress = false;
+    // configuration was received in part and its changes are already applied, but not reported to listeners yet
+    private boolean configUnfinished = false;
+    // changes made by configuration being received
+    private LxConfigDelta configDelta = new LxConfigDelta();
+    private Set<LxUuid> changedContainers = new HashSet<>();
+    // UUIDs of rooms, categories, controls and states in the last configuration and in configuration being received
+    private Set<LxUuid> knownUuids = new HashSet<>();
+    private Set<LxUuid> seenUuids = new HashSet<>();
+    private LxStateIndex stateIndex = new LxStateIndex(0);
+    private LxControlState[] stateSlots = new LxControlState[0];
+    // controls with changed states and sets of state names, reused by every notification of state updates
+    private final Map<LxControl, Set<String>> changedControls = new LinkedHashMap<>();
+    private final List<Set<String>> freeStateNames = new ArrayList<>();
+    private LxStateStore stateStore = new LxStateStore(0);
+    private LxWsStateUpdateCursor cursor = new LxWsStateUpdateCursor();
     private List<LxServerListener> listeners = new ArrayList<LxServerListener>();
 
     // Services
     private boolean running = true;
     private LxWsClient socketClient;
+    private LxWsClient commandClient = null;
+    private ScheduledFuture<?> commandClientReconnect = null;
+    // main connection is online, command connection can be used
+    private boolean serverOnline = false;
+    private LxHttpClient httpClient = null;
     private Thread monitorThread = null;
-    private BlockingQueue<LxServerEvent> queue = new LinkedBlockingQueue<LxServerEvent>();
+    private final int eventQueueSize;
+    private final LxServerEventQueue queue;
 
     private Logger logger = LoggerFactory.getLogger(LxServer.class);
 
     private int debugId;
     private static AtomicInteger staticDebugId = new AtomicInteger(1);
+    // schedules connecting the command connection again
+    private static final ScheduledExecutorService SCHEDULER = ThreadPoolManager
+            .getScheduledPool(LxServer.class.getName());
 
     /**
      * Reasons why Miniserver may be not reachable
@@ -132,17 +166,44 @@ public class LxServer {
      *            user name used for logging in
      * @param password
      *            password used for logging in
+     * @param eventQueueSize
+     *            number of events that can wait for processing by the server thread
      */
-    public LxServer(InetAddress host, int port, String user, String password) {
+    public LxServer(InetAddress host, int port, String user, String password, int eventQueueSize) {
         this.host = host;
         this.port = port;
         this.user = user;
         this.password = password;
+        this.eventQueueSize = eventQueueSize;
+        queue = new LxServerEventQueue(eventQueueSize);
 
         debugId = staticDebugId.getAndIncrement();
         socketClient = new LxWsClient(debugId, queue, host, port, user, password);
     }
 
+    /**
+     * Set folder where data related to this Miniserver is kept between binding restarts. It must be called before
+     * {@link #start()}.
+     *
+     * @param folder
+     *            path to the folder, null if nothing should be kept
+     * @param serial
+     *            serial number of the Miniserver, configuration is cached in a sub-folder with this name
+     */
+    public void setDataFolder(String folder, String serial) {
+        File tokenFile = null;
+        File configFolder = null;
+        if (folder != null) {
+            tokenFile = new File(folder, host.getHostAddress() + File.separator
+                    + user.replaceAll("[^a-zA-Z0-9._-]", "_") + ".token");
+            if (serial != null) {
+                configFolder = new File(folder, serial.replaceAll("[^a-zA-Z0-9._-]", "_"));
+            }
+        }
+        socketClient.setTokenFile(tokenFile);
+        socketClient.setConfigCacheFolder(configFolder);
+    }
+
     /**
      * Initiate communication with the Miniserver.
      * Starts thread that handles communication.
@@ -162,15 +223,13 @@ public class LxServer {
         if (monitorThread != null) {
             logger.debug("[{}] Server stop", debugId);
             synchronized (monitorThread) {
-                if (queue != null) {
-                    LxServerEvent event = new LxServerEvent(EventType.CLIENT_CLOSING, OfflineReason.NONE, null);
-                    try {
-                        queue.put(event);
-                        monitorThread.notify();
-                    } catch (InterruptedException e) {
+                try {
+                    if (!queue.put(EventType.CLIENT_CLOSING, OfflineReason.NONE, null)) {
+                        // queue is full, interrupting the thread ends it as well
                         monitorThread.interrupt();
                     }
-                } else {
+                    monitorThread.notify();
+                } catch (InterruptedException e) {
                     monitorThread.interrupt();
                 }
             }
@@ -203,9 +262,22 @@ public class LxServer {
      *            maximum binary message size of websocket client (in kB)
      * @param maxTextMsgSize
      *            maximum text message size of websocket client (in kB)
+     * @param conflateUpdates
+     *            true to keep only the last received value of each state until server thread processes it (takes
+     *            effect when next configuration is received from the Miniserver)
+     * @param eventQueueWait
+     *            the way server thread waits for events (blocking, yielding or spinning)
+     * @param commandConnection
+     *            true to send commands over a separate websocket connection (takes effect when Miniserver goes online
+     *            next time)
+     * @param httpFallback
+     *            true to send commands over HTTP when websocket is not running or is busy
+     * @param tokenAuthentication
+     *            true to authenticate with tokens (takes effect when the client connects next time)
      */
     public void update(int firstConDelay, int keepAlivePeriod, int connectErrDelay, int connectTimeout,
-            int userErrorDelay, int comErrorDelay, int maxBinMsgSize, int maxTextMsgSize) {
+            int userErrorDelay, int comErrorDelay, int maxBinMsgSize, int maxTextMsgSize, boolean conflateUpdates,
+            String eventQueueWait, boolean commandConnection, boolean httpFallback, boolean tokenAuthentication) {
 
         logger.debug("[{}] Server update configuration", debugId);
 
@@ -225,8 +297,25 @@ public class LxServer {
             logger.debug("[{}] Changing comErrorDelay to {}", debugId, comErrorDelay);
             this.comErrorDelay = comErrorDelay;
         }
+        if (this.conflateUpdates != conflateUpdates) {
+            logger.debug("[{}] Changing conflateUpdates to {}", debugId, conflateUpdates);
+            this.conflateUpdates = conflateUpdates;
+        }
+        if (this.commandConnection != commandConnection) {
+            logger.debug("[{}] Changing commandConnection to {}", debugId, commandConnection);
+            this.commandConnection = commandConnection;
+        }
+        updateHttpClient(httpFallback);
+        LxServerEventQueue.WaitStrategy waitStrategy = LxServerEventQueue.WaitStrategy.fromName(eventQueueWait);
+        logger.debug("[{}] Setting event queue wait strategy to {}", debugId, waitStrategy);
+        queue.setWaitStrategy(waitStrategy);
         if (socketClient != null) {
             socketClient.update(keepAlivePeriod, connectTimeout, maxBinMsgSize, maxTextMsgSize);
+            socketClient.setTokensEnabled(tokenAuthentication);
+        }
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null) {
+            cmdClient.update(keepAlivePeriod, connectTimeout, maxBinMsgSize, maxTextMsgSize);
         }
     }
 
@@ -261,12 +350,125 @@ public class LxServer {
      *            A new web service port to check against
      * @param password
      *            A new password to check against
+     * @param eventQueueSize
+     *            A new size of event queue to check against
      * @return
      *         true if current Miniserver configuration is different
      */
-    public boolean isChanged(InetAddress host, int port, String user, String password) {
+    public boolean isChanged(InetAddress host, int port, String user, String password, int eventQueueSize) {
         return (!(this.port == port && this.host.toString().equals(host.toString()) && this.user.equals(user)
-                && this.password.equals(password)));
+                && this.password.equals(password) && this.eventQueueSize == eventQueueSize));
+    }
+
+    /**
+     * Gets number of events that can wait in the queue for processing by the server thread
+     *
+     * @return
+     *         event queue capacity
+     */
+    public int getEventQueueCapacity() {
+        return queue.getCapacity();
+    }
+
+    /**
+     * Gets the highest number of events that were waiting for processing by the server thread at the same time
+     *
+     * @return
+     *         event queue high-water mark
+     */
+    public int getEventQueueHighWaterMark() {
+        return queue.getHighWaterMark();
+    }
+
+    /**
+     * Gets number of state update events, which were discarded because event queue was full
+     *
+     * @return
+     *         number of rejected events
+     */
+    public long getEventQueueRejectedCount() {
+        return queue.getRejectedCount();
+    }
+
+    /**
+     * Gets number of commands sent to controls and acknowledged by the Miniserver
+     *
+     * @return
+     *         number of acknowledged commands
+     */
+    public long getCommandsAcknowledged() {
+        long count = socketClient.getCommandTracker().getAcknowledged();
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null) {
+            count += cmdClient.getCommandTracker().getAcknowledged();
+        }
+        return count;
+    }
+
+    /**
+     * Gets number of commands sent to controls, which failed or were rejected by the Miniserver
+     *
+     * @return
+     *         number of failed commands
+     */
+    public long getCommandsFailed() {
+        long count = socketClient.getCommandTracker().getFailed();
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null) {
+            count += cmdClient.getCommandTracker().getFailed();
+        }
+        return count;
+    }
+
+    /**
+     * Gets number of commands sent to controls, which were not acknowledged by the Miniserver in time
+     *
+     * @return
+     *         number of timed out commands
+     */
+    public long getCommandsTimedOut() {
+        long count = socketClient.getCommandTracker().getTimedOut();
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null) {
+            count += cmdClient.getCommandTracker().getTimedOut();
+        }
+        return count;
+    }
+
+    /**
+     * Gets average time between sending a command to a control and receiving its acknowledgement
+     *
+     * @return
+     *         average command round-trip time in microseconds
+     */
+    public long getCommandAverageRoundTrip() {
+        LxCommandTracker tracker = socketClient.getCommandTracker();
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient == null) {
+            return tracker.getAverageRoundTrip();
+        }
+        LxCommandTracker cmdTracker = cmdClient.getCommandTracker();
+        long count = tracker.getAcknowledged() + cmdTracker.getAcknowledged();
+        if (count == 0) {
+            return 0;
+        }
+        return (tracker.getAverageRoundTrip() * tracker.getAcknowledged()
+                + cmdTracker.getAverageRoundTrip() * cmdTracker.getAcknowledged()) / count;
+    }
+
+    /**
+     * Gets the longest time between sending a command to a control and receiving its acknowledgement
+     *
+     * @return
+     *         maximum command round-trip time in microseconds
+     */
+    public long getCommandMaxRoundTrip() {
+        long max = socketClient.getCommandTracker().getMaxRoundTrip();
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null) {
+            max = Math.max(max, cmdClient.getCommandTracker().getMaxRoundTrip());
+        }
+        return max;
     }
 
     /**
@@ -382,6 +584,7 @@ public class LxServer {
 
             // initial delay to initiate connection
             int waitTime = firstConDelay * 1000;
+            LxServerEvent wsMsg = new LxServerEvent(EventType.NONE, OfflineReason.NONE, null);
 
             while (running) {
                 // wait until next connect attempt, this time depends on what happened before
@@ -406,47 +609,54 @@ public class LxServer {
 
                 while (connected) {
                     try {
-                        LxServerEvent wsMsg = queue.take();
+                        queue.take(wsMsg);
                         EventType event = wsMsg.getEvent();
                         logger.trace("[{}] Server received event: {}", debugId, event.toString());
 
                         switch (event) {
+                            case CONFIG_PIECE:
+                                if (!configInProgress) {
+                                    startConfigUpdate();
+                                }
+                                updateConfigPiece(wsMsg.getObject());
+                                break;
                             case RECEIVED_CONFIG:
                                 LxJsonApp3 config = (LxJsonApp3) wsMsg.getObject();
                                 if (config != null) {
+                                    if (!configInProgress) {
+                                        startConfigUpdate();
+                                    }
                                     updateConfig(config);
+                                    finishConfigUpdate();
                                     for (LxServerListener listener : listeners) {
-                                        listener.onNewConfig(server);
+                                        listener.onNewConfig(server, configDelta);
                                     }
                                 } else {
                                     logger.debug("[{}] Server failed processing received configuration", debugId);
                                 }
                                 break;
                             case STATE_UPDATE:
-                                LxWsStateUpdateEvent update = (LxWsStateUpdateEvent) wsMsg.getObject();
-                                LxControlState state = findState(update.getUuid());
-                                if (state != null) {
-                                    state.setValue(update.getValue(), update.getText());
-                                    LxControl control = state.getControl();
-                                    if (control != null) {
-                                        logger.debug("[{}] State update {} ({}:{}) to value {}, text '{}'", debugId,
-                                                update.getUuid().toString(), control.getName(), state.getName(),
-                                                update.getValue(), update.getText());
-                                        for (LxServerListener listener : listeners) {
-                                            listener.onControlStateUpdate(control);
-                                        }
-                                    } else {
-                                        logger.debug("[{}] State update {} ({}) of unknown control", debugId,
-                                                update.getUuid().toString(), state.getName());
-                                    }
-                                }
+                                processStateUpdates((LxWsStateUpdateTable) wsMsg.getObject());
+                                notifyStateUpdates();
+                                break;
+                            case STATE_UPDATES_PENDING:
+                                ((LxStateUpdateConflater) wsMsg.getObject()).drain(server::applyStateUpdate);
+                                notifyStateUpdates();
                                 break;
                             case SERVER_ONLINE:
+                                serverOnline = true;
+                                connectCommandClient();
                                 for (LxServerListener listener : listeners) {
                                     listener.onServerGoesOnline();
                                 }
                                 break;
                             case SERVER_OFFLINE:
+                                // configuration received in part will be received again after reconnection, changes
+                                // it already made are reported together with the next configuration
+                                if (configInProgress) {
+                                    configInProgress = false;
+                                    configUnfinished = true;
+                                }
                                 OfflineReason reason = wsMsg.getOfflineReason();
                                 String details = null;
                                 if (wsMsg.getObject() instanceof String) {
@@ -455,6 +665,8 @@ public class LxServer {
                                 logger.debug("[{}] Websocket goes OFFLINE, reason {} : {}.", debugId, reason.toString(),
                                         details);
 
+                                serverOnline = false;
+                                disconnectCommandClient();
                                 if (reason == OfflineReason.TOO_MANY_FAILED_LOGIN_ATTEMPTS) {
                                     // assume credentials are wrong, do not re-attempt connections
                                     // close thread and expect a new LxServer object will have to be re-created
@@ -473,6 +685,14 @@ public class LxServer {
                                     listener.onServerGoesOffline(reason, details);
                                 }
                                 break;
+                            case COMMAND_CLIENT_OFFLINE:
+                                commandClientOffline(wsMsg.getOfflineReason(), wsMsg.getObject());
+                                break;
+                            case COMMAND_CLIENT_RECONNECT:
+                                if (serverOnline) {
+                                    connectCommandClient();
+                                }
+                                break;
                             case CLIENT_CLOSING:
                                 connected = false;
                                 running = false;
@@ -488,29 +708,282 @@ public class LxServer {
                     }
                 }
             }
-            logger.debug("[{}] Thread ending", debugId);
+            logger.debug("[{}] Thread ending, event queue capacity {}, high-water mark {}, rejected {}", debugId,
+                    queue.getCapacity(), queue.getHighWaterMark(), queue.getRejectedCount());
+            disconnectCommandClient();
+            updateHttpClient(false);
             socketClient.disconnect();
             monitorThread = null;
-            queue = null;
         }
     }
 
     /**
-     * Updates runtime configuration from parsed JSON configuration file of Loxone Miniserver (LoxApp3.json)
+     * Creates or removes HTTP client used to send commands when websocket can't be used
      *
-     * @param config
-     *            parsed JSON LoxApp3.json file
+     * @param enabled
+     *            true if HTTP client should exist
      */
-    private void updateConfig(LxJsonApp3 config) {
+    private synchronized void updateHttpClient(boolean enabled) {
+        if (enabled && httpClient == null) {
+            logger.debug("[{}] Enabling HTTP fallback for commands", debugId);
+            httpClient = new LxHttpClient(debugId, host, port, user, password);
+            socketClient.setHttpClient(httpClient);
+        } else if (!enabled && httpClient != null) {
+            logger.debug("[{}] Disabling HTTP fallback for commands", debugId);
+            socketClient.setHttpClient(null);
+            httpClient.stop();
+            httpClient = null;
+        }
+    }
+
+    /**
+     * Connects a separate websocket for sending commands, if it is enabled. Until it is ready, commands are sent over
+     * the main websocket.
+     */
+    private void connectCommandClient() {
+        if (!commandConnection) {
+            return;
+        }
+        if (commandClient == null) {
+            commandClient = socketClient.createCommandClient();
+        }
+        cancelCommandClientReconnect();
+        logger.debug("[{}] Connecting command websocket", debugId);
+        if (commandClient.connect()) {
+            socketClient.setCommandClient(commandClient);
+        } else {
+            logger.debug("[{}] Command websocket connect failed, commands will use main websocket", debugId);
+            scheduleCommandClientReconnect(connectErrDelay);
+        }
+    }
+
+    /**
+     * Handles closing of the separate command connection, while the main connection is online. Commands are sent over
+     * the main connection, until the command connection is connected again after a delay, like the main connection.
+     *
+     * @param reason
+     *            reason of closing the command connection
+     * @param details
+     *            details of the reason (can be null)
+     */
+    private void commandClientOffline(OfflineReason reason, Object details) {
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient == null || !serverOnline) {
+            return;
+        }
+        cmdClient.disconnect();
+        if (reason == OfflineReason.UNAUTHORIZED || reason == OfflineReason.TOO_MANY_FAILED_LOGIN_ATTEMPTS) {
+            // failed logins of the command connection count against the same user as the main connection
+            logger.warn("[{}] Command websocket authentication failed ({}): {}", debugId, reason, details);
+        } else {
+            logger.debug("[{}] Command websocket closed, reason {} : {}", debugId, reason, details);
+        }
+        if (reason == OfflineReason.TOO_MANY_FAILED_LOGIN_ATTEMPTS) {
+            logger.warn("[{}] Command websocket will not be connected until the Miniserver goes online again",
+                    debugId);
+        } else if (reason == OfflineReason.UNAUTHORIZED) {
+            scheduleCommandClientReconnect(userErrorDelay);
+        } else {
+            scheduleCommandClientReconnect(comErrorDelay);
+        }
+    }
+
+    /**
+     * Schedules connecting the command connection again, the server thread connects it when the time comes
+     *
+     * @param delay
+     *            time to wait before connecting (seconds)
+     */
+    private synchronized void scheduleCommandClientReconnect(int delay) {
+        cancelCommandClientReconnect();
+        logger.debug("[{}] Command websocket reconnect in {} s", debugId, delay);
+        commandClientReconnect = SCHEDULER.schedule(() -> {
+            try {
+                queue.put(EventType.COMMAND_CLIENT_RECONNECT, OfflineReason.NONE, null);
+            } catch (InterruptedException e) {
+                logger.debug("[{}] Interrupted scheduling command websocket reconnect", debugId);
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    private synchronized void cancelCommandClientReconnect() {
+        if (commandClientReconnect != null) {
+            commandClientReconnect.cancel(false);
+            commandClientReconnect = null;
+        }
+    }
+
+    /**
+     * Disconnects the separate websocket for sending commands, if it exists
+     */
+    private void disconnectCommandClient() {
+        cancelCommandClientReconnect();
+        socketClient.setCommandClient(null);
+        if (commandClient != null) {
+            commandClient.disconnect();
+        }
+    }
+
+    /**
+     * Applies all state updates from a table received in a binary message from the Miniserver
+     *
+     * @param table
+     *            table with state update events
+     */
+    private void processStateUpdates(LxWsStateUpdateTable table) {
+        cursor.reset(table);
+        try {
+            while (cursor.next()) {
+                LxControlState state = findState(cursor.getUuidMsb(), cursor.getUuidLsb());
+                if (state != null) {
+                    applyStateUpdate(state, cursor.getValue(), cursor.getText());
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            logger.debug("[{}] malformed state update table received, remaining part discarded", debugId);
+        }
+    }
+
+    /**
+     * Sets a new value of a state. Listeners are notified later, when all updates received together are applied.
+     *
+     * @param state
+     *            state to update
+     * @param value
+     *            new value of the state
+     * @param text
+     *            new text value of the state
+     */
+    private void applyStateUpdate(LxControlState state, double value, String text) {
+        state.setValue(value, text);
+        LxControl control = state.getControl();
+        if (control != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] State update {} ({}:{}) to value {}, text '{}'", debugId,
+                        state.getUuid().toString(), control.getName(), state.getName(), value, text);
+            }
+        } else {
+            logger.debug("[{}] State update {} ({}) of unknown control", debugId, state.getUuid().toString(),
+                    state.getName());
+        }
+    }
+
+    /**
+     * Notifies listeners about controls, which states changed since last notification. Each control is notified once,
+     * with names of all its changed states, no matter how many of its states were updated. Collections passed to
+     * listeners are reused by next notifications.
+     */
+    private void notifyStateUpdates() {
+        for (int slot = stateStore.nextDirty(0); slot >= 0; slot = stateStore.nextDirty(slot + 1)) {
+            LxControlState state = stateSlots[slot];
+            LxControl control = state.getControl();
+            if (control != null) {
+                Set<String> names = changedControls.get(control);
+                if (names == null) {
+                    int free = freeStateNames.size();
+                    names = free > 0 ? freeStateNames.remove(free - 1) : new HashSet<>();
+                    changedControls.put(control, names);
+                }
+                names.add(state.getName());
+            }
+        }
+        stateStore.clearDirty();
+        try {
+            for (Map.Entry<LxControl, Set<String>> entry : changedControls.entrySet()) {
+                for (LxServerListener listener : listeners) {
+                    listener.onControlStateUpdate(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            for (Set<String> names : changedControls.values()) {
+                names.clear();
+                freeStateNames.add(names);
+            }
+            changedControls.clear();
+        }
+    }
+
+    /**
+     * Starts updating runtime configuration. Objects not received until {@link #finishConfigUpdate()} is called, will
+     * be removed. If the previous configuration was received only in part, its changes are kept, so they are reported
+     * with this configuration - objects it added are already known and would not be reported as changed again.
+     */
+    private void startConfigUpdate() {
         logger.trace("[{}] Updating configuration from Miniserver", debugId);
+        configInProgress = true;
+        deferredControls.clear();
+        if (configUnfinished) {
+            logger.debug("[{}] Previous configuration not finished, keeping its changes: {}", debugId, configDelta);
+            // objects added by unfinished configuration are removed, if they are not received again
+            knownUuids.addAll(seenUuids);
+            configUnfinished = false;
+        } else {
+            configDelta = new LxConfigDelta();
+            changedContainers.clear();
+        }
+        seenUuids.clear();
+    }
 
-        for (LxUuid id : uuids) {
-            id.setUpdate(false);
+    /**
+     * Updates runtime configuration with a single room, category or control, received while configuration is
+     * streamed. A control that refers to a room or category not received yet, is updated at the end.
+     *
+     * @param piece
+     *            parsed part of JSON LoxApp3.json file
+     */
+    private void updateConfigPiece(Object piece) {
+        if (piece instanceof LxJsonApp3.LxJsonRoom) {
+            LxJsonApp3.LxJsonRoom room = (LxJsonApp3.LxJsonRoom) piece;
+            addOrUpdateRoom(new LxUuid(room.uuid), room.name);
+        } else if (piece instanceof LxJsonApp3.LxJsonCat) {
+            LxJsonApp3.LxJsonCat cat = (LxJsonApp3.LxJsonCat) piece;
+            addOrUpdateCategory(new LxUuid(cat.uuid), cat.name, cat.type);
+        } else if (piece instanceof LxJsonApp3.LxJsonControl) {
+            LxJsonApp3.LxJsonControl ctrl = (LxJsonApp3.LxJsonControl) piece;
+            if ((ctrl.room != null && findRoom(new LxUuid(ctrl.room)) == null)
+                    || (ctrl.cat != null && findCategory(new LxUuid(ctrl.cat)) == null)) {
+                deferredControls.add(ctrl);
+            } else {
+                updateControl(ctrl);
+            }
         }
-        for (LxUuid id : states.keySet()) {
-            id.setUpdate(false);
+    }
+
+    /**
+     * Finishes updating runtime configuration. Controls waiting for their room or category are updated and objects
+     * that were not updated are removed.
+     */
+    private void finishConfigUpdate() {
+        for (LxJsonApp3.LxJsonControl ctrl : deferredControls) {
+            updateControl(ctrl);
         }
+        deferredControls.clear();
+        configInProgress = false;
+        // remove items that do not exist anymore in Miniserver
+        logger.trace("[{}] removing unused objects", debugId);
+        removeUnseen();
+        if (!changedContainers.isEmpty()) {
+            // controls that did not change, but their room or category did
+            for (LxControl control : controls.values()) {
+                if ((control.getRoom() != null && changedContainers.contains(control.getRoom().getUuid()))
+                        || (control.getCategory() != null
+                                && changedContainers.contains(control.getCategory().getUuid()))) {
+                    configDelta.addChanged(control);
+                }
+            }
+            changedContainers.clear();
+        }
+        logger.debug("[{}] Configuration updated: {}", debugId, configDelta);
+        buildStateIndex();
+    }
 
+    /**
+     * Updates runtime configuration from parsed JSON configuration file of Loxone Miniserver (LoxApp3.json)
+     *
+     * @param config
+     *            parsed JSON LoxApp3.json file
+     */
+    private void updateConfig(LxJsonApp3 config) {
         if (config.msInfo != null) {
             logger.trace("[{}] updating global config", debugId);
             miniserverName = buildName(config.msInfo.msName);
@@ -540,42 +1013,79 @@ public class LxServer {
         if (config.controls != null) {
             logger.trace("[{}] creating controls", debugId);
             for (LxJsonApp3.LxJsonControl ctrl : config.controls.values()) {
-                // create a new control or update existing one
-                try {
-                    addOrUpdateControl(ctrl);
-                } catch (Exception e) {
-                    logger.error("[{}] exception creating control {}: {}", debugId, ctrl.name, e.toString());
-                }
+                updateControl(ctrl);
             }
         }
-        // remove items that do not exist anymore in Miniserver
-        logger.trace("[{}] removing unused objects", debugId);
-        removeUnusedFromMap(rooms);
-        removeUnusedFromMap(categories);
-        removeUnusedFromMap(controls);
-        removeUnusedFromMap(states);
     }
 
     /**
-     * Removes all entries from a map, that do not have the 'updated' flag set on UUID key
+     * Creates a new control or updates existing one
      *
-     * @param <T>
-     *            any type of container used in the map
-     * @param map
-     *            map to remove entries from
+     * @param ctrl
+     *            parsed JSON control
      */
+    private void updateControl(LxJsonApp3.LxJsonControl ctrl) {
+        try {
+            addOrUpdateControl(ctrl);
+        } catch (Exception e) {
+            logger.error("[{}] exception creating control {}: {}", debugId, ctrl.name, e.toString());
+        }
+    }
 
-    private <T> void removeUnusedFromMap(Map<LxUuid, T> map) {
-        for (Iterator<Map.Entry<LxUuid, T>> it = map.entrySet().iterator(); it.hasNext();) {
-            Map.Entry<LxUuid, T> entry = it.next();
-            if (!entry.getKey().getUpdate()) {
-                uuids.remove(entry.getKey());
-                it.remove();
-                if (entry.getValue() instanceof LxControl) {
-                    ((LxControl) entry.getValue()).dispose();
-                }
+    /**
+     * Assigns slot numbers to all states of the server, binds states to slots of a new state store and builds an index
+     * to find them by UUID of binary state update events. Values of states that existed before are preserved.
+     */
+    private void buildStateIndex() {
+        LxStateIndex index = new LxStateIndex(states.size());
+        LxControlState[] slots = new LxControlState[states.size()];
+        int slot = 0;
+        for (LxControlState state : states.values()) {
+            LxUuid id = state.getUuid();
+            if (id.isBinary() && index.put(id.getMsb(), id.getLsb(), slot)) {
+                slots[slot++] = state;
+            } else {
+                logger.debug("[{}] State {} can't be updated with binary events", debugId, id.toString());
             }
         }
+        LxStateStore store = new LxStateStore(slot);
+        for (int i = 0; i < slot; i++) {
+            slots[i].bind(store, i);
+        }
+        stateSlots = slots;
+        stateIndex = index;
+        stateStore = store;
+        logger.trace("[{}] Indexed {} states", debugId, slot);
+        if (conflateUpdates) {
+            socketClient.setConflater(new LxStateUpdateConflater(index, slots));
+        } else {
+            socketClient.setConflater(null);
+        }
+    }
+
+    /**
+     * Removes objects, which were in the last configuration, but were not received in the new configuration. Only
+     * UUIDs of the last configuration are checked, objects of the new configuration are not scanned.
+     */
+    private void removeUnseen() {
+        for (LxUuid id : knownUuids) {
+            if (seenUuids.contains(id)) {
+                continue;
+            }
+            rooms.remove(id);
+            categories.remove(id);
+            states.remove(id);
+            LxControl control = controls.remove(id);
+            if (control != null) {
+                configDelta.addRemoved(control);
+                control.dispose();
+            }
+            uuids.remove(id);
+        }
+        Set<LxUuid> previous = knownUuids;
+        knownUuids = seenUuids;
+        seenUuids = previous;
+        seenUuids.clear();
     }
 
     /**
@@ -649,7 +1159,11 @@ public class LxServer {
             return null;
         }
         LxContainer r = findRoom(id);
+        seenUuids.add(id);
         if (r != null) {
+            if (!Objects.equals(r.getName(), name)) {
+                changedContainers.add(r.getUuid());
+            }
             r.setName(name);
             return r;
         }
@@ -668,13 +1182,31 @@ public class LxServer {
      *         state object
      */
     private LxControlState findState(LxUuid id) {
-        if (states == null || id == null) {
+        if (id == null) {
             return null;
         }
-        if (states.containsKey(id)) {
-            return states.get(id);
+        if (id.isBinary()) {
+            return findState(id.getMsb(), id.getLsb());
         }
-        return null;
+        return states.get(id);
+    }
+
+    /**
+     * Search for a state with given 128-bit UUID value
+     *
+     * @param msb
+     *            most significant 64 bits of state's UUID
+     * @param lsb
+     *            least significant 64 bits of state's UUID
+     * @return
+     *         state object or null if not found
+     */
+    private LxControlState findState(long msb, long lsb) {
+        int slot = stateIndex.get(msb, lsb);
+        if (slot < 0) {
+            return null;
+        }
+        return stateSlots[slot];
     }
 
     /**
@@ -712,9 +1244,15 @@ public class LxServer {
             return null;
         }
         LxCategory c = findCategory(id);
+        seenUuids.add(id);
         if (c != null) {
+            LxCategory.CategoryType oldType = c.getType();
+            String oldName = c.getName();
             c.setName(name);
             c.setType(type);
+            if (!Objects.equals(oldName, c.getName()) || oldType != c.getType()) {
+                changedContainers.add(c.getUuid());
+            }
             return c;
         }
         id = addUuid(id);
@@ -747,14 +1285,21 @@ public class LxServer {
 
         LxUuid id = new LxUuid(json.uuidAction);
         LxControl control = findControl(id);
+        boolean changed = true;
         if (control != null) {
-            control.update(json, room, category);
+            if (json.fingerprint != null && json.fingerprint.equals(control.getFingerprint())
+                    && room == control.getRoom() && category == control.getCategory()) {
+                // same configuration as before, only keep the control and its states from being removed
+                changed = false;
+            } else {
+                control.update(json, room, category);
+            }
         } else {
             id = addUuid(id);
             control = LxControl.createControl(socketClient, id, json, room, category);
         }
         if (control != null) {
-            updateControls(control);
+            updateControls(control, changed);
         }
     }
 
@@ -763,16 +1308,22 @@ public class LxServer {
      *
      * @param control
      *            control to update in server structures
+     * @param changed
+     *            true if control's configuration changed
      */
-    private void updateControls(LxControl control) {
+    private void updateControls(LxControl control, boolean changed) {
         for (LxControlState state : control.getStates().values()) {
-            state.getUuid().setUpdate(true);
+            seenUuids.add(state.getUuid());
             states.put(state.getUuid(), state);
         }
-        controls.put(control.uuid, control);
-        control.uuid.setUpdate(true);
+        if (controls.put(control.uuid, control) == null) {
+            configDelta.addAdded(control);
+        } else if (changed) {
+            configDelta.addChanged(control);
+        }
+        seenUuids.add(control.uuid);
         for (LxControl subControl : control.getSubControls().values()) {
-            updateControls(subControl);
+            updateControls(subControl, changed);
         }
     }
 
@@ -38,14 +38,34 @@ class LxServerEvent {
          */
         SERVER_OFFLINE,
         /**
-         * Received configuration of Miniserver. There is a {@link LxJsonApp3} object associated.
+         * Received a room, category or control of Miniserver's configuration, while the configuration is streamed.
+         * There is a {@link LxJsonApp3.LxJsonRoom}, {@link LxJsonApp3.LxJsonCat} or {@link LxJsonApp3.LxJsonControl}
+         * object associated.
+         */
+        CONFIG_PIECE,
+        /**
+         * Received configuration of Miniserver. There is a {@link LxJsonApp3} object associated. If configuration was
+         * streamed, it completes the objects received before with {@link #CONFIG_PIECE} events.
          */
         RECEIVED_CONFIG,
         /**
-         * Received control's state value or text update from Miniserver. There is a {@link LxWsStateUpdateEvent} object
-         * associated.
+         * Received a table of controls' state value or text updates from Miniserver. There is a
+         * {@link LxWsStateUpdateTable} object associated.
          */
         STATE_UPDATE,
+        /**
+         * Received controls' state updates from Miniserver, which are waiting for processing in a
+         * {@link LxStateUpdateConflater} object associated.
+         */
+        STATE_UPDATES_PENDING,
+        /**
+         * Separate command connection is closed. There is a reason parameter associated.
+         */
+        COMMAND_CLIENT_OFFLINE,
+        /**
+         * Time to connect the separate command connection again, after it was closed or failed to connect.
+         */
+        COMMAND_CLIENT_RECONNECT,
         /**
          * Received request to shutdown thread from {@link LxServer} object.
          */
@@ -62,6 +82,22 @@ class LxServerEvent {
         this.object = object;
     }
 
+    /**
+     * Replace content of the event, when event object is reused to take events from {@link LxServerEventQueue}
+     *
+     * @param event
+     *            type of event
+     * @param reason
+     *            reason for server going offline
+     * @param object
+     *            object associated with the event
+     */
+    void set(EventType event, LxServer.OfflineReason reason, Object object) {
+        this.event = event;
+        this.reason = reason;
+        this.object = object;
+    }
+
     /**
      * Get type of event
      *
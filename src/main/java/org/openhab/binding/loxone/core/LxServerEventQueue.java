@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openhab.binding.loxone.core.LxServer.OfflineReason;
+import org.openhab.binding.loxone.core.LxServerEvent.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of events sent to the {@link LxServer} thread by websocket client, scheduler and binding's handler.
+ * <p>
+ * Queue is a ring buffer with slots allocated up front, where any number of threads can put events and only the
+ * {@link LxServer} thread takes them. Producers claim slots without locking, with a sequence number kept for each
+ * slot to tell if it is free or holds an event ready to take.
+ * <p>
+ * 1/8 of the queue is reserved for lifecycle events (connection, configuration and closing of the client). When
+ * the rest of the queue fills up, behavior depends on the event type:
+ * <ul>
+ * <li>tables of state updates are rejected and counted as rejected - the producer has to request all states again to
+ * not lose them, or conflating of updates can be enabled, where at most one event signalling pending updates is in
+ * the queue at a time
+ * <li>pieces of streamed configuration are never dropped and the producer waits until there is space in the queue -
+ * configuration is parsed by a thread that holds no locks, so waiting slows down the parsing and nothing else
+ * <li>lifecycle events never wait and use the reserved slots - their producers may hold websocket client's lock,
+ * which the {@link LxServer} thread may need to drain the queue, so waiting for space could deadlock; if even the
+ * reserved slots are full, the event is rejected and an error is logged, as the consumer is not keeping up at all
+ * </ul>
+ * Highest number of events waiting in the queue and number of rejected events are recorded, to help tuning the
+ * queue size.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxServerEventQueue {
+    /**
+     * Way the {@link LxServer} thread waits for new events, when the queue is empty
+     *
+     * @author agent - initial commit
+     *
+     */
+    enum WaitStrategy {
+        /**
+         * Thread sleeps until a producer wakes it up - no CPU is used while waiting, at a cost of wake-up latency
+         */
+        BLOCKING,
+        /**
+         * Thread gives up the processor between checks of the queue
+         */
+        YIELDING,
+        /**
+         * Thread keeps checking the queue - lowest latency, but one processor core is busy all the time
+         */
+        SPINNING;
+
+        /**
+         * Convert configuration parameter value to wait strategy
+         *
+         * @param name
+         *            name of the strategy (case insensitive)
+         * @return
+         *         wait strategy or {@link #BLOCKING} if name is not recognized
+         */
+        static WaitStrategy fromName(String name) {
+            if (name != null) {
+                for (WaitStrategy strategy : values()) {
+                    if (strategy.name().equalsIgnoreCase(name.trim())) {
+                        return strategy;
+                    }
+                }
+            }
+            return BLOCKING;
+        }
+    }
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int capacity;
+    private final int mask;
+    private final int valueLimit;
+    private final AtomicLongArray sequences;
+    private final EventType[] events;
+    private final OfflineReason[] reasons;
+    private final Object[] objects;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private volatile boolean consumerWaiting = false;
+    private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private Logger logger = LoggerFactory.getLogger(LxServerEventQueue.class);
+
+    /**
+     * Create a new queue
+     *
+     * @param size
+     *            requested number of slots in the queue, it will be rounded up to a power of two (0 for default size)
+     */
+    LxServerEventQueue(int size) {
+        if (size <= 0) {
+            size = DEFAULT_CAPACITY;
+        }
+        capacity = Integer.highestOneBit(Math.max(size, MIN_CAPACITY) - 1) << 1;
+        mask = capacity - 1;
+        // keep 1/8 of the queue for lifecycle events
+        valueLimit = capacity - capacity / 8;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        events = new EventType[capacity];
+        reasons = new OfflineReason[capacity];
+        objects = new Object[capacity];
+    }
+
+    /**
+     * Set the way the consumer waits for events
+     *
+     * @param waitStrategy
+     *            new wait strategy
+     */
+    void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Put an event into the queue. Tables of state updates are rejected if the queue is close to full, configuration
+     * pieces wait for free space and other events use the space reserved for them.
+     *
+     * @param event
+     *            type of event
+     * @param reason
+     *            reason for server going offline
+     * @param object
+     *            object associated with the event
+     * @return
+     *         true if event was put into the queue, false if it was rejected
+     * @throws InterruptedException
+     *             when thread was interrupted while waiting for space in the queue
+     */
+    boolean put(EventType event, OfflineReason reason, Object object) throws InterruptedException {
+        boolean droppable = event == EventType.STATE_UPDATE;
+        boolean waiting = event == EventType.CONFIG_PIECE;
+        long pos;
+        int index;
+        while (true) {
+            pos = tail.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if ((droppable || waiting) && pos - head >= valueLimit) {
+                    // only the space reserved for lifecycle events is left
+                    if (droppable) {
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                    waitForSpace();
+                } else if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // queue is full
+                if (waiting) {
+                    waitForSpace();
+                    continue;
+                }
+                rejected.incrementAndGet();
+                if (!droppable) {
+                    logger.error("Event queue full ({} events), rejected event {}", capacity, event);
+                }
+                return false;
+            }
+        }
+        events[index] = event;
+        reasons[index] = reason;
+        objects[index] = object;
+        // volatile write, so it is visible before consumerWaiting is checked
+        sequences.set(index, pos + 1);
+        recordSize(pos + 1 - head);
+        signalConsumer();
+        return true;
+    }
+
+    /**
+     * Get number of events waiting in the queue
+     *
+     * @return
+     *         number of events
+     */
+    int size() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Take next event from the queue, waiting for it if the queue is empty. This method may be called only by the
+     * {@link LxServer} thread.
+     *
+     * @param into
+     *            event object to fill with the taken event
+     * @throws InterruptedException
+     *             when thread was interrupted while waiting for an event
+     */
+    void take(LxServerEvent into) throws InterruptedException {
+        while (!poll(into)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (waitStrategy) {
+                case SPINNING:
+                    break;
+                case YIELDING:
+                    Thread.yield();
+                    break;
+                default:
+                    lock.lockInterruptibly();
+                    try {
+                        consumerWaiting = true;
+                        while (isEmpty()) {
+                            notEmpty.await();
+                        }
+                    } finally {
+                        consumerWaiting = false;
+                        lock.unlock();
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Get number of slots in the queue
+     *
+     * @return
+     *         queue capacity
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the highest number of events that were waiting in the queue at the same time
+     *
+     * @return
+     *         high-water mark of the queue
+     */
+    int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Get number of events rejected, because the queue was full
+     *
+     * @return
+     *         number of rejected events
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private void waitForSpace() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private void signalConsumer() {
+        if (consumerWaiting) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean poll(LxServerEvent into) {
+        long pos = head;
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return false;
+        }
+        into.set(events[index], reasons[index], objects[index]);
+        events[index] = null;
+        reasons[index] = null;
+        objects[index] = null;
+        sequences.lazySet(index, pos + capacity);
+        head = pos + 1;
+        return true;
+    }
+
+    private boolean isEmpty() {
+        long pos = head;
+        return sequences.get((int) pos & mask) != pos + 1;
+    }
+
+    private void recordSize(long size) {
+        int current;
+        while (size > (current = highWaterMark.get())) {
+            if (highWaterMark.compareAndSet(current, (int) size)) {
+                break;
+            }
+        }
+    }
+}
@@ -8,6 +8,8 @@
  */
 package org.openhab.binding.loxone.core;
 
+import java.util.Set;
+
 import org.openhab.binding.loxone.core.LxServer.OfflineReason;
 
 /**
@@ -25,9 +27,11 @@ public interface LxServerListener {
      *
      * @param server
      *            server object that can be queried for new configuration of the Miniserver
+     * @param delta
+     *            controls added, changed and removed, compared to the previous configuration
      *
      */
-    public void onNewConfig(LxServer server);
+    public void onNewConfig(LxServer server, LxConfigDelta delta);
 
     /**
      * Called by {@link LxServer} thread when Loxone Miniserver goes online and communication channel is established and
@@ -48,11 +52,15 @@ public interface LxServerListener {
     public void onServerGoesOffline(OfflineReason reason, String details);
 
     /**
-     * Called by {@link LxServer} thread when a state of a control is updated on the Loxone Miniserver
+     * Called by {@link LxServer} thread when states of a control are updated on the Loxone Miniserver. All updates
+     * received in one message from the Miniserver result in one call per control.
      *
      * @param control
      *            control object, which state changed
+     * @param changedStates
+     *            names of control's states, which changed - the set is reused after the call returns, so it must not
+     *            be kept
      */
-    public void onControlStateUpdate(LxControl control);
+    public void onControlStateUpdate(LxControl control, Set<String> changedStates);
 
 }
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+/**
+ * Index of control states by their UUID.
+ * <p>
+ * It maps 128-bit value of state's {@link LxUuid} to a dense slot number, assigned to the state when Miniserver's
+ * configuration is processed. It is an open-addressing hash table with linear probing, that keeps keys and values in
+ * primitive arrays. Lookup can be done with the UUID bytes of a binary state update event, without creating any key
+ * object, and its cost does not depend on the number of states.
+ * <p>
+ * Index is built once per received configuration and not modified afterwards.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxStateIndex {
+    private static final int EMPTY = -1;
+
+    private final long[] msbs;
+    private final long[] lsbs;
+    private final int[] slots;
+    private final int mask;
+    private int size = 0;
+
+    /**
+     * Create an empty index
+     *
+     * @param expectedSize
+     *            number of states that will be put into the index
+     */
+    LxStateIndex(int expectedSize) {
+        // keep load factor below 0.5 to shorten probe sequences
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = EMPTY;
+        }
+    }
+
+    /**
+     * Add state's UUID to the index
+     *
+     * @param msb
+     *            most significant 64 bits of state's UUID
+     * @param lsb
+     *            least significant 64 bits of state's UUID
+     * @param slot
+     *            slot number assigned to the state (not negative)
+     * @return
+     *         true if UUID was added, false if it already existed or there is no room in the index
+     */
+    boolean put(long msb, long lsb, int slot) {
+        if (size >= slots.length / 2) {
+            return false;
+        }
+        int i = hash(msb, lsb) & mask;
+        while (slots[i] != EMPTY) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        msbs[i] = msb;
+        lsbs[i] = lsb;
+        slots[i] = slot;
+        size++;
+        return true;
+    }
+
+    /**
+     * Find slot number of a state with given UUID
+     *
+     * @param msb
+     *            most significant 64 bits of state's UUID
+     * @param lsb
+     *            least significant 64 bits of state's UUID
+     * @return
+     *         slot number of the state or -1 if state is not in the index
+     */
+    int get(long msb, long lsb) {
+        int i = hash(msb, lsb) & mask;
+        int slot;
+        while ((slot = slots[i]) != EMPTY) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Find slot number of a state with UUID in binary format, as received from the Miniserver
+     *
+     * @param data
+     *            buffer with binary message received from the Miniserver
+     * @param offset
+     *            offset in the buffer where the 16 bytes of UUID start
+     * @return
+     *         slot number of the state or -1 if state is not in the index
+     */
+    int get(byte data[], int offset) {
+        return get(LxUuid.msbFromBytes(data, offset), LxUuid.lsbFromBytes(data, offset));
+    }
+
+    /**
+     * Get number of states in the index
+     *
+     * @return
+     *         number of states
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Spread UUID bits over the whole hash value, as many UUIDs on one Miniserver share their least significant part
+     *
+     * @param msb
+     *            most significant 64 bits of the UUID
+     * @param lsb
+     *            least significant 64 bits of the UUID
+     * @return
+     *         hash value
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L + lsb;
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+}
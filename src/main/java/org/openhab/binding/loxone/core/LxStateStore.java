@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Columnar storage of values of all control states of a Miniserver.
+ * <p>
+ * Each {@link LxControlState} is assigned a slot number in the store, when configuration is received from the
+ * Miniserver. Values, text values, change sequence numbers and a bitmap of states changed since it was last cleared
+ * are kept in arrays indexed by the slot number. This way bulk operations on states are array scans.
+ * <p>
+ * Store is not thread-safe. It is modified only by the {@link LxServer} thread.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxStateStore {
+    private final double[] values;
+    private final String[] texts;
+    private final long[] sequences;
+    private final long[] dirty;
+    private long sequence = 0;
+
+    /**
+     * Create a new store with all values unset
+     *
+     * @param size
+     *            number of slots in the store
+     */
+    LxStateStore(int size) {
+        values = new double[size];
+        texts = new String[size];
+        sequences = new long[size];
+        dirty = new long[(size + 63) >>> 6];
+        Arrays.fill(values, -1);
+    }
+
+    /**
+     * Get number of slots in the store
+     *
+     * @return
+     *         number of slots
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * Sets current value of a state in given slot. If value changed, state gets a new change sequence number and is
+     * marked as dirty.
+     *
+     * @param slot
+     *            slot of the state
+     * @param value
+     *            current state's value to set
+     * @param text
+     *            current state's text value to set
+     * @return
+     *         true if value or text value changed
+     */
+    boolean set(int slot, double value, String text) {
+        boolean changed = false;
+        if (Double.compare(values[slot], value) != 0) {
+            values[slot] = value;
+            changed = true;
+        }
+        if (!Objects.equals(texts[slot], text)) {
+            texts[slot] = text;
+            changed = true;
+        }
+        if (changed) {
+            sequences[slot] = ++sequence;
+            dirty[slot >>> 6] |= 1L << slot;
+        }
+        return changed;
+    }
+
+    /**
+     * Gets current value of a state in given slot
+     *
+     * @param slot
+     *            slot of the state
+     * @return
+     *         current state's value
+     */
+    double getValue(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Gets current text value of a state in given slot
+     *
+     * @param slot
+     *            slot of the state
+     * @return
+     *         current state's text value
+     */
+    String getText(int slot) {
+        return texts[slot];
+    }
+
+    /**
+     * Gets sequence number of the last change of a state in given slot. Sequence numbers grow with each change in the
+     * store, 0 means the state has not changed since the store was created.
+     *
+     * @param slot
+     *            slot of the state
+     * @return
+     *         sequence number of last change
+     */
+    long getSequence(int slot) {
+        return sequences[slot];
+    }
+
+    /**
+     * Checks if state in given slot changed since the dirty flag was last cleared
+     *
+     * @param slot
+     *            slot of the state
+     * @return
+     *         true if state is dirty
+     */
+    boolean isDirty(int slot) {
+        return (dirty[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Finds next dirty state, starting at given slot
+     *
+     * @param from
+     *            first slot to check
+     * @return
+     *         slot of next dirty state or -1 if there are no more dirty states
+     */
+    int nextDirty(int from) {
+        int word = from >>> 6;
+        if (word >= dirty.length) {
+            return -1;
+        }
+        long bits = dirty[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == dirty.length) {
+                return -1;
+            }
+            bits = dirty[word];
+        }
+    }
+
+    /**
+     * Clears dirty flag of a state in given slot
+     *
+     * @param slot
+     *            slot of the state
+     */
+    void clearDirty(int slot) {
+        dirty[slot >>> 6] &= ~(1L << slot);
+    }
+
+    /**
+     * Clears dirty flags of all states
+     */
+    void clearDirty() {
+        Arrays.fill(dirty, 0);
+    }
+
+    /**
+     * Copies value of a state from another store, when slots are reassigned after configuration update. Change
+     * sequence number and dirty flag are not copied.
+     *
+     * @param from
+     *            store to copy from
+     * @param fromSlot
+     *            slot of the state in the store to copy from
+     * @param toSlot
+     *            slot of the state in this store
+     */
+    void copy(LxStateStore from, int fromSlot, int toSlot) {
+        values[toSlot] = from.values[fromSlot];
+        texts[toSlot] = from.texts[fromSlot];
+    }
+}
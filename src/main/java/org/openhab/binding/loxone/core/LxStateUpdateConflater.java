@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+/**
+ * Pending state updates, kept per state slot, where only the last received value of a state is remembered.
+ * <p>
+ * When conflating of state updates is enabled, websocket client puts received state updates here instead of queuing
+ * them for the {@link LxServer} thread. Only one event is queued for the server thread to signal there are pending
+ * updates, no matter how many updates are received before the server thread drains them. This way size of the queue
+ * does not depend on the rate of incoming updates and intermediate values of frequently changing states are skipped.
+ * <p>
+ * An object of this class is bound to the state index and slots built for one Miniserver configuration. Updates of
+ * states, which are not in the index, are ignored.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxStateUpdateConflater {
+    private final LxStateIndex index;
+    private final LxControlState[] states;
+
+    private double[] values;
+    private String[] texts;
+    private long[] pending;
+    private double[] drainValues;
+    private String[] drainTexts;
+    private long[] drainPending;
+    private boolean scheduled = false;
+
+    /**
+     * Create conflater for states of a Miniserver configuration
+     *
+     * @param index
+     *            index of states by their UUID
+     * @param states
+     *            states indexed by slot number assigned in the index
+     */
+    LxStateUpdateConflater(LxStateIndex index, LxControlState[] states) {
+        this.index = index;
+        this.states = states;
+        values = new double[states.length];
+        texts = new String[states.length];
+        pending = new long[(states.length + 63) >>> 6];
+        drainValues = new double[states.length];
+        drainTexts = new String[states.length];
+        drainPending = new long[pending.length];
+    }
+
+    /**
+     * Remember a state update, replacing any pending update of the same state
+     *
+     * @param msb
+     *            most significant 64 bits of state's UUID
+     * @param lsb
+     *            least significant 64 bits of state's UUID
+     * @param value
+     *            value of the state
+     * @param text
+     *            text value of the state
+     * @return
+     *         true if there were no pending updates before and server thread has to be notified
+     */
+    synchronized boolean offer(long msb, long lsb, double value, String text) {
+        int slot = index.get(msb, lsb);
+        if (slot < 0) {
+            return false;
+        }
+        values[slot] = value;
+        texts[slot] = text;
+        pending[slot >>> 6] |= 1L << slot;
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Take all pending updates and pass them to the consumer. Updates received while the consumer runs remain pending
+     * and will require another notification of the server thread.
+     *
+     * @param consumer
+     *            consumer of the pending updates
+     */
+    void drain(Consumer consumer) {
+        synchronized (this) {
+            double[] v = drainValues;
+            String[] t = drainTexts;
+            long[] p = drainPending;
+            drainValues = values;
+            drainTexts = texts;
+            drainPending = pending;
+            values = v;
+            texts = t;
+            pending = p;
+            scheduled = false;
+        }
+        // drain arrays are accessed only by the server thread now
+        for (int word = 0; word < drainPending.length; word++) {
+            long bits = drainPending[word];
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                LxControlState state = states[slot];
+                String text = drainTexts[slot];
+                drainTexts[slot] = null;
+                if (state != null) {
+                    consumer.accept(state, drainValues[slot], text);
+                }
+            }
+            drainPending[word] = 0;
+        }
+    }
+
+    /**
+     * Consumer of drained state updates
+     *
+     * @author agent - initial commit
+     *
+     */
+    interface Consumer {
+        /**
+         * Called for every pending state update
+         *
+         * @param state
+         *            state to update
+         * @param value
+         *            last received value of the state
+         * @param text
+         *            last received text value of the state
+         */
+        void accept(LxControlState state, double value, String text);
+    }
+}
@@ -8,19 +8,29 @@
  */
 package org.openhab.binding.loxone.core;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 /**
  * Unique identifier of an object on Loxone Miniserver.
  * <p>
  * It is defined by the Miniserver. UUID can represent a control, room, category, etc. and provides a unique ID space
  * across all objects residing on the Miniserver.
+ * <p>
+ * A Miniserver UUID is a 128-bit value, which is kept as two long numbers. Binary state update events carry it in
+ * little-endian wire format and it is decoded from there directly, without building any strings. Text form of the
+ * UUID is created only when it is needed. Some identifiers found in the Miniserver's configuration (e.g. light
+ * controller's outputs) have a suffix appended to the UUID, which does not fit into 128 bits - these are compared by
+ * their text form.
  *
  * @author Pawel Pieczul - initial commit
  *
  */
 public class LxUuid {
+    private static final int UUID_STRING_LENGTH = 35;
+    private static final char[] HEX_DIGITS_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final char[] HEX_DIGITS_LOWER = "0123456789abcdef".toCharArray();
+
+    private final long msb;
+    private final long lsb;
+    private final boolean binary;
     private String uuid;
     private String uuidOriginal;
     private boolean updated;
@@ -32,25 +42,96 @@ public class LxUuid {
      *            identifier retrieved from Loxone Miniserver
      */
     public LxUuid(String uuid) {
-        init(uuid);
+        uuidOriginal = uuid;
+        this.uuid = uuid.replaceAll("[^a-zA-Z0-9-]", "-").toUpperCase();
+        long hi = 0, lo = 0;
+        boolean parsed = this.uuid.length() == UUID_STRING_LENGTH;
+        for (int i = 0, digits = 0; parsed && i < UUID_STRING_LENGTH; i++) {
+            char c = this.uuid.charAt(i);
+            if (i == 8 || i == 13 || i == 18) {
+                parsed = (c == '-');
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                parsed = false;
+            } else if (digits++ < 16) {
+                hi = (hi << 4) | digit;
+            } else {
+                lo = (lo << 4) | digit;
+            }
+        }
+        msb = parsed ? hi : 0;
+        lsb = parsed ? lo : 0;
+        binary = parsed;
+        updated = true;
     }
 
+    /**
+     * Create a new {@link LxUuid} object from a binary representation received from the Miniserver.
+     * <p>
+     * First three fields of the UUID (32, 16 and 16 bits long) are in little-endian order, the remaining 8 bytes are
+     * kept in the order in which they are displayed.
+     *
+     * @param data
+     *            buffer with binary message received from the Miniserver
+     * @param offset
+     *            offset in the buffer where the 16 bytes of UUID start
+     */
     public LxUuid(byte data[], int offset) {
-        String id = String.format("%08x-%04x-%04x-%02x%02x%02x%02x%02x%02x%02x%02x",
-                ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(),
-                ByteBuffer.wrap(data, offset + 4, 2).order(ByteOrder.LITTLE_ENDIAN).getShort(),
-                ByteBuffer.wrap(data, offset + 6, 2).order(ByteOrder.LITTLE_ENDIAN).getShort(), data[offset + 8],
-                data[offset + 9], data[offset + 10], data[offset + 11], data[offset + 12], data[offset + 13],
-                data[offset + 14], data[offset + 15]);
-        init(id);
+        this(msbFromBytes(data, offset), lsbFromBytes(data, offset));
     }
 
-    private void init(String uuid) {
-        uuidOriginal = uuid;
-        this.uuid = uuidOriginal.replaceAll("[^a-zA-Z0-9-]", "-").toUpperCase();
+    /**
+     * Create a new {@link LxUuid} object from its 128-bit value.
+     *
+     * @param msb
+     *            most significant 64 bits of the UUID
+     * @param lsb
+     *            least significant 64 bits of the UUID
+     */
+    LxUuid(long msb, long lsb) {
+        this.msb = msb;
+        this.lsb = lsb;
+        binary = true;
         updated = true;
     }
 
+    /**
+     * Decode most significant 64 bits of the UUID from its binary representation
+     *
+     * @param data
+     *            buffer with binary message received from the Miniserver
+     * @param offset
+     *            offset in the buffer where the 16 bytes of UUID start
+     * @return
+     *         most significant 64 bits of the UUID
+     */
+    static long msbFromBytes(byte data[], int offset) {
+        return ((data[offset + 3] & 0xFFL) << 56) | ((data[offset + 2] & 0xFFL) << 48)
+                | ((data[offset + 1] & 0xFFL) << 40) | ((data[offset] & 0xFFL) << 32)
+                | ((data[offset + 5] & 0xFFL) << 24) | ((data[offset + 4] & 0xFFL) << 16)
+                | ((data[offset + 7] & 0xFFL) << 8) | (data[offset + 6] & 0xFFL);
+    }
+
+    /**
+     * Decode least significant 64 bits of the UUID from its binary representation
+     *
+     * @param data
+     *            buffer with binary message received from the Miniserver
+     * @param offset
+     *            offset in the buffer where the 16 bytes of UUID start
+     * @return
+     *         least significant 64 bits of the UUID
+     */
+    static long lsbFromBytes(byte data[], int offset) {
+        long lo = 0;
+        for (int i = 8; i < 16; i++) {
+            lo = (lo << 8) | (data[offset + i] & 0xFFL);
+        }
+        return lo;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -63,16 +144,29 @@ public class LxUuid {
             return false;
         }
         LxUuid id = (LxUuid) o;
+        if (binary != id.binary) {
+            return false;
+        }
+        if (binary) {
+            return msb == id.msb && lsb == id.lsb;
+        }
         return uuid.equals(id.uuid);
     }
 
     @Override
     public int hashCode() {
+        if (binary) {
+            long hash = msb ^ lsb;
+            return (int) (hash ^ (hash >>> 32));
+        }
         return uuid.hashCode();
     }
 
     @Override
     public String toString() {
+        if (uuid == null) {
+            uuid = format(HEX_DIGITS_UPPER);
+        }
         return uuid;
     }
 
@@ -84,9 +178,42 @@ public class LxUuid {
      */
 
     public String getOriginalString() {
+        if (uuidOriginal == null) {
+            uuidOriginal = format(HEX_DIGITS_LOWER);
+        }
         return uuidOriginal;
     }
 
+    /**
+     * Get most significant 64 bits of the UUID
+     *
+     * @return
+     *         most significant bits or 0 if the UUID is not a plain 128-bit identifier
+     */
+    long getMsb() {
+        return msb;
+    }
+
+    /**
+     * Get least significant 64 bits of the UUID
+     *
+     * @return
+     *         least significant bits or 0 if the UUID is not a plain 128-bit identifier
+     */
+    long getLsb() {
+        return lsb;
+    }
+
+    /**
+     * Check if UUID is a plain 128-bit identifier, that can be received in a binary message from the Miniserver
+     *
+     * @return
+     *         true if UUID is represented by its 128-bit value
+     */
+    boolean isBinary() {
+        return binary;
+    }
+
     /**
      * Indicate the object corresponding to UUID has recently been updated.
      *
@@ -106,4 +233,28 @@ public class LxUuid {
     boolean getUpdate() {
         return updated;
     }
+
+    /**
+     * Build text representation of the UUID in Miniserver's format (xxxxxxxx-xxxx-xxxx-xxxxxxxxxxxxxxxx)
+     *
+     * @param digits
+     *            hexadecimal digits to use
+     * @return
+     *         UUID as a string
+     */
+    private String format(char[] digits) {
+        char[] buf = new char[UUID_STRING_LENGTH];
+        int pos = 0;
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            if (pos == 8 || pos == 13) {
+                buf[pos++] = '-';
+            }
+            buf[pos++] = digits[(int) (msb >>> shift) & 0x0F];
+        }
+        buf[pos++] = '-';
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            buf[pos++] = digits[(int) (lsb >>> shift) & 0x0F];
+        }
+        return new String(buf);
+    }
 }
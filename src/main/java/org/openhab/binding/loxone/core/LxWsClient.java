@@ -8,17 +8,25 @@
  */
 package org.openhab.binding.loxone.core;
 
+import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -28,11 +36,14 @@ import org.apache.commons.codec.binary.Hex;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketFrame;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.eclipse.smarthome.core.common.ThreadPoolManager;
@@ -42,6 +53,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 
 /**
@@ -66,20 +80,59 @@ class LxWsClient {
     private ScheduledFuture<?> timeout = null;
     private LxWebSocket socket = null;
     private WebSocketClient wsClient = null;
-    private BlockingQueue<LxServerEvent> queue;
-    private ClientState state = ClientState.IDLE;
+    private LxServerEventQueue queue;
+    private final boolean commandOnly;
+    private volatile LxWsClient commandClient = null;
+    private volatile LxHttpClient httpClient = null;
+    private volatile LxWsToken token = null;
+    // tokens are used only when enabled and until the Miniserver refuses them for the first time
+    private volatile boolean tokensEnabled = false;
+    private boolean tokenAuthentication = false;
+    private boolean refreshingToken = false;
+    private String tokenHashAlg = null;
+    private ScheduledFuture<?> tokenRefresh = null;
+    private ScheduledFuture<?> stateResync = null;
+    private volatile LxConfigCache configCache = null;
+    // guards state machine transitions, owned by this client so other Miniservers' clients do not contend for it
+    private final Object stateLock = new Object();
+    private volatile ClientState state = ClientState.IDLE;
+    private final AtomicInteger pendingActions = new AtomicInteger();
+    private final LxCommandTracker commands;
+    private volatile LxStateUpdateConflater conflater = null;
+    private final LxWsStateUpdateCursor cursor = new LxWsStateUpdateCursor();
     private Logger logger = LoggerFactory.getLogger(LxWsClient.class);
 
     private static final ScheduledExecutorService SCHEDULER = ThreadPoolManager
             .getScheduledPool(LxWsClient.class.getName());
+    // configuration is parsed here, so websocket threads are not occupied by it
+    private static final ExecutorService CONFIG_EXECUTOR = ThreadPoolManager
+            .getPool(LxWsClient.class.getName() + ".config");
 
+    // Gson is thread safe, one instance parses all responses
+    private static final Gson GSON = new Gson();
     private static final String SOCKET_URL = "/ws/rfc6455";
+    // pending websocket writes above which commands are sent over HTTP, if HTTP client is available
+    private static final int HTTP_FALLBACK_PENDING_ACTIONS = 8;
+
     private static final String CMD_ACTION = "jdev/sps/io/";
     private static final String CMD_GET_KEY = "jdev/sys/getkey";
     private static final String CMD_AUTHENTICATE = "authenticate/";
     private static final String CMD_KEEPALIVE = "keepalive";
     private static final String CMD_ENABLE_UPDATES = "jdev/sps/enablebinstatusupdate";
     private static final String CMD_GET_APP_CONFIG = "data/LoxAPP3.json";
+    private static final String CMD_GET_APP_VERSION = "jdev/sps/LoxAPPversion3";
+    private static final String CMD_GET_KEY2 = "jdev/sys/getkey2/";
+    private static final String CMD_GET_TOKEN = "jdev/sys/gettoken/";
+    private static final String CMD_AUTH_WITH_TOKEN = "authwithtoken/";
+    private static final String CMD_REFRESH_TOKEN = "jdev/sys/refreshtoken/";
+
+    // long lived token, as used by apps
+    private static final int TOKEN_PERMISSION = 4;
+    private static final String TOKEN_CLIENT_INFO = "openHAB";
+    // shortest time between token refreshes, in seconds
+    private static final long TOKEN_MIN_REFRESH_DELAY = 60;
+    // time between checks if event queue has room to receive all states again, after state updates were lost, in ms
+    private static final long STATE_RESYNC_DELAY = 1000;
 
     /**
      * Internal state of the websocket client.
@@ -104,6 +157,10 @@ class LxWsClient {
          * Waiting for authentication
          */
         AUTHENTICATING,
+        /**
+         * Waiting for version of Miniserver's configuration, to compare it with cached configuration
+         */
+        CHECKING_CONFIGURATION,
         /**
          * Waiting for Miniserver's configuration
          */
@@ -232,7 +289,7 @@ class LxWsClient {
      * @param password
      *            password to authenticate
      */
-    LxWsClient(int debugId, BlockingQueue<LxServerEvent> queue, InetAddress host, int port, String user,
+    LxWsClient(int debugId, LxServerEventQueue queue, InetAddress host, int port, String user,
             String password) {
         this.debugId = debugId;
         this.queue = queue;
@@ -240,6 +297,103 @@ class LxWsClient {
         this.port = port;
         this.user = user;
         this.password = password;
+        this.commandOnly = false;
+        this.commands = new LxCommandTracker(debugId, SCHEDULER);
+    }
+
+    /**
+     * Create a websocket client, which only sends commands to controls. It authenticates and then skips downloading
+     * configuration and receiving state updates. It has no master {@link LxServer} object to notify.
+     *
+     * @param master
+     *            websocket client, which parameters are used by the new client
+     */
+    private LxWsClient(LxWsClient master) {
+        this.debugId = master.debugId;
+        // only closing of the command connection is reported, so it can be connected again
+        this.queue = master.queue;
+        this.host = master.host;
+        this.port = master.port;
+        this.user = master.user;
+        this.password = master.password;
+        this.keepAlivePeriod = master.keepAlivePeriod;
+        this.connectTimeout = master.connectTimeout;
+        this.maxBinMsgSize = master.maxBinMsgSize;
+        this.maxTextMsgSize = master.maxTextMsgSize;
+        // token is shared for reading only, it is acquired, refreshed and cleared by the master client
+        this.token = master.token;
+        this.tokensEnabled = master.tokensEnabled;
+        this.commandOnly = true;
+        this.commands = new LxCommandTracker(debugId, SCHEDULER);
+    }
+
+    /**
+     * Create a websocket client for a separate connection, which only sends commands to controls, so they do not wait
+     * behind configuration and state updates received on this client's connection. New client has the same parameters
+     * as this client and is not connected.
+     *
+     * @return
+     *         a new command-only websocket client
+     */
+    LxWsClient createCommandClient() {
+        return new LxWsClient(this);
+    }
+
+    /**
+     * Set file where authentication token is kept. When tokens are enabled and a token exists, it is used to
+     * authenticate instead of user's credentials. A new token is acquired and kept refreshed, when the client is
+     * running.
+     *
+     * @param file
+     *            file to keep the token in or null to not use tokens
+     */
+    void setTokenFile(File file) {
+        token = file != null ? new LxWsToken(debugId, file) : null;
+    }
+
+    /**
+     * Enable or disable authentication with tokens. Token commands are sent over the websocket without encryption,
+     * which is accepted only by some Miniserver firmware versions, so tokens are disabled by default and when the
+     * Miniserver refuses them.
+     *
+     * @param enabled
+     *            true to authenticate with tokens
+     */
+    void setTokensEnabled(boolean enabled) {
+        tokensEnabled = enabled;
+    }
+
+    /**
+     * Set folder, where the last received Miniserver's configuration is cached. When configuration on the Miniserver
+     * has not changed since it was cached, it is read from the cache instead of downloading it again.
+     *
+     * @param folder
+     *            folder for configuration cache or null if configuration should not be cached
+     */
+    void setConfigCacheFolder(File folder) {
+        configCache = folder != null ? new LxConfigCache(debugId, folder) : null;
+    }
+
+    /**
+     * Set HTTP client, which is used to send commands to controls when the websocket is not running or has too many
+     * commands waiting to be written.
+     *
+     * @param httpClient
+     *            HTTP client or null to send commands over websocket only
+     */
+    void setHttpClient(LxHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Set a command-only client, which is used to send commands to controls when its connection is ready. When it is
+     * not ready, commands are sent over this client's connection.
+     *
+     * @param commandClient
+     *            command-only websocket client or null to send all commands over this client's connection
+     */
+    void setCommandClient(LxWsClient commandClient) {
+        this.commandClient = commandClient;
     }
 
     /**
@@ -256,7 +410,7 @@ class LxWsClient {
             return false;
         }
 
-        synchronized (state) {
+        synchronized (stateLock) {
             socket = new LxWebSocket();
             wsClient = new WebSocketClient();
 
@@ -324,8 +478,11 @@ class LxWsClient {
      */
     private void close(String reason) {
         logger.trace("[{}] close() websocket", debugId);
-        synchronized (state) {
+        synchronized (stateLock) {
             stopResponseTimeout();
+            stopTokenRefresh();
+            stopStateResync();
+            commands.failAll("Connection to Miniserver closed");
             if (socket != null) {
                 if (socket.session != null) {
                     if (state != ClientState.IDLE) {
@@ -393,20 +550,89 @@ class LxWsClient {
 
     /**
      * Sends an action to a Loxone Miniserver's control.
+     * <p>
+     * The command is handed over to the websocket without waiting for it to be written, so the calling thread is never
+     * blocked by a slow connection. Commands are written in the order of calls.
+     * Controls build commands of their actions with {@link #buildAction(LxUuid, String)} once, so the command does not
+     * have to be formatted again each time it is sent.
+     *
+     * @param command
+     *            complete command of the action
+     * @return
+     *         future completed when the Miniserver acknowledges the command, completed exceptionally with an
+     *         {@link IOException} when the websocket is not connected, communication error occurs or Miniserver rejects
+     *         the command, or with a {@link java.util.concurrent.TimeoutException} when there is no acknowledgement
+     */
+    CompletableFuture<Void> sendAction(String command) {
+        LxWsClient cmdClient = commandClient;
+        if (cmdClient != null && cmdClient.state == ClientState.RUNNING) {
+            return cmdClient.sendAction(command);
+        }
+        LxHttpClient http = httpClient;
+        if (http != null && (state != ClientState.RUNNING || pendingActions.get() >= HTTP_FALLBACK_PENDING_ACTIONS)) {
+            long sent = System.nanoTime();
+            return http.send(command, connectTimeout).whenComplete((r, e) -> commands.record(sent, e));
+        }
+        logger.debug("[{}] Sending command {}", debugId, command);
+        LxWebSocket ws = socket;
+        if (ws == null) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new IOException("Miniserver not connected"));
+            return result;
+        }
+        // track before sending, so the response can't arrive before the command is in the table
+        CompletableFuture<Void> result = commands.add(command, connectTimeout);
+        ws.sendStringAsync(command).whenComplete((r, e) -> {
+            if (e != null) {
+                commands.fail(result, e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Build a command, which performs an operation on a Miniserver's control
      *
      * @param id
      *            identifier of the control
      * @param operation
      *            identifier of the operation
-     * @throws IOException
-     *             when communication error with Miniserver occurs
-     * @throws JsonSyntaxException
-     *             when server returns data which are not understood
+     * @return
+     *         command to send to the Miniserver
      */
-    void sendAction(LxUuid id, String operation) throws IOException {
-        String command = CMD_ACTION + id.getOriginalString() + "/" + operation;
-        logger.debug("[{}] Sending command {}", debugId, command);
-        socket.sendString(command);
+    static String buildAction(LxUuid id, String operation) {
+        return CMD_ACTION + id.getOriginalString() + "/" + operation;
+    }
+
+    /**
+     * Get tracker of commands sent to the Miniserver, which keeps statistics of command acknowledgements
+     *
+     * @return
+     *         command tracker
+     */
+    LxCommandTracker getCommandTracker() {
+        return commands;
+    }
+
+    /**
+     * Get number of actions handed over to the websocket, which are not written yet
+     *
+     * @return
+     *         number of pending actions
+     */
+    int getPendingActions() {
+        return pendingActions.get();
+    }
+
+    /**
+     * Sets an object to keep received state updates in, instead of queuing each received table of updates for the
+     * {@link LxServer} thread.
+     *
+     * @param conflater
+     *            object to keep state updates in or null to queue all tables of updates
+     */
+    void setConflater(LxStateUpdateConflater conflater) {
+        this.conflater = conflater;
     }
 
     /**
@@ -420,6 +646,62 @@ class LxWsClient {
         this.state = state;
     }
 
+    /**
+     * Stops scheduled refresh of the authentication token
+     */
+    private void stopTokenRefresh() {
+        synchronized (stateLock) {
+            refreshingToken = false;
+            if (tokenRefresh != null) {
+                tokenRefresh.cancel(false);
+                tokenRefresh = null;
+            }
+        }
+    }
+
+    /**
+     * Schedules a request to send all states again, after a table of state updates could not be passed to the
+     * {@link LxServer}, because the event queue was full. Miniserver sends values of all states, when state updates are
+     * enabled. The request is sent when the queue is at most half full, so the states are not lost again.
+     */
+    private void scheduleStateResync() {
+        synchronized (stateLock) {
+            if (stateResync != null) {
+                return;
+            }
+            stateResync = SCHEDULER.schedule(() -> {
+                synchronized (stateLock) {
+                    stateResync = null;
+                    if (state != ClientState.RUNNING || socket == null) {
+                        return;
+                    }
+                    if (queue.size() > queue.getCapacity() / 2) {
+                        scheduleStateResync();
+                        return;
+                    }
+                    logger.debug("[{}] State updates were lost, requesting all states again", debugId);
+                    try {
+                        socket.sendString(CMD_ENABLE_UPDATES);
+                    } catch (IOException e) {
+                        logger.debug("[{}] Error requesting all states: {}", debugId, e.getMessage());
+                    }
+                }
+            }, STATE_RESYNC_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops scheduled request to send all states again
+     */
+    private void stopStateResync() {
+        synchronized (stateLock) {
+            if (stateResync != null) {
+                stateResync.cancel(false);
+                stateResync = null;
+            }
+        }
+    }
+
     /**
      * Start a timer to wait for a Miniserver response to an action sent from the binding.
      * When timer expires, connection is removed and server error is reported. Further connection attempt can be made
@@ -427,13 +709,17 @@ class LxWsClient {
      * If a previous timer is running, it will be stopped before a new timer is started.
      */
     private void startResponseTimeout() {
-        synchronized (state) {
+        synchronized (stateLock) {
             stopResponseTimeout();
             timeout = SCHEDULER.schedule(new Runnable() {
                 @Override
                 public void run() {
-                    synchronized (state) {
+                    synchronized (stateLock) {
                         logger.debug("[{}] Miniserver response timeout", debugId);
+                        if (socket != null) {
+                            // configuration parser must not wait for the rest of a stalled transfer
+                            socket.failConfigStream("Miniserver stopped sending configuration");
+                        }
                         notifyMaster(EventType.SERVER_OFFLINE, OfflineReason.COMMUNICATION_ERROR,
                                 "Miniserver response timeout occured");
                         disconnect();
@@ -448,7 +734,7 @@ class LxWsClient {
      */
     private void stopResponseTimeout() {
         logger.trace("[{}] stopping response timeout in state {}", debugId, state.toString());
-        synchronized (state) {
+        synchronized (stateLock) {
             if (timeout != null) {
                 timeout.cancel(true);
                 timeout = null;
@@ -465,17 +751,30 @@ class LxWsClient {
      *            reason for the event (applicable to server OFFLINE event}
      * @param object
      *            additional data for the event (text message for OFFLINE event, data for state changes)
+     * @return
+     *         false if event was discarded, because the event queue was full
      */
-    private void notifyMaster(EventType event, OfflineReason reason, Object object) {
+    private boolean notifyMaster(EventType event, OfflineReason reason, Object object) {
         if (reason == null) {
             reason = OfflineReason.NONE;
         }
-        LxServerEvent sync = new LxServerEvent(event, reason, object);
+        if (commandOnly) {
+            // commands fall back to the main connection, server connects command connection again when it is closed
+            logger.debug("[{}] Command websocket event {}, reason {}", debugId, event, reason);
+            if (event != EventType.SERVER_OFFLINE) {
+                return true;
+            }
+            event = EventType.COMMAND_CLIENT_OFFLINE;
+        }
         try {
-            queue.put(sync);
+            if (!queue.put(event, reason, object)) {
+                logger.debug("[{}] Event queue full, discarded event {}", debugId, event);
+                return false;
+            }
         } catch (InterruptedException e) {
             logger.debug("[{}] Interrupted queue operation", debugId);
         }
+        return true;
     }
 
     /**
@@ -489,10 +788,29 @@ class LxWsClient {
         Session session;
         private ScheduledFuture<?> keepAlive = null;
         private LxWsBinaryHeader header = null;
+        // text message being received in frames, either into a buffer or into a stream read by configuration parser
+        private boolean receivingText = false;
+        private final ByteArrayOutputStream textBuffer = new ByteArrayOutputStream();
+        private volatile LxWsMessageStream configStream = null;
+
+        /**
+         * Ends configuration being received, if any, with a failure, so the parser stops waiting for the rest of it
+         *
+         * @param reason
+         *            reason of the failure
+         */
+        private void failConfigStream(String reason) {
+            synchronized (stateLock) {
+                if (configStream != null) {
+                    configStream.fail(reason);
+                    configStream = null;
+                }
+            }
+        }
 
         @OnWebSocketConnect
         public void onConnect(Session session) {
-            synchronized (state) {
+            synchronized (stateLock) {
                 if (state != ClientState.CONNECTING) {
                     logger.debug("[{}] Unexpected connect received on websocket in state {}", debugId,
                             state.toString());
@@ -520,7 +838,7 @@ class LxWsClient {
             keepAlive = SCHEDULER.scheduleAtFixedRate(new Runnable() {
                 @Override
                 public void run() {
-                    synchronized (state) {
+                    synchronized (stateLock) {
                         if (state == ClientState.CLOSING || state == ClientState.IDLE
                                 || state == ClientState.CONNECTING) {
                             stopKeepAlive();
@@ -539,10 +857,11 @@ class LxWsClient {
 
         @OnWebSocketClose
         public void onClose(int statusCode, String reason) {
-            synchronized (state) {
+            synchronized (stateLock) {
                 logger.debug("[{}] Websocket connection in state {} closed with code {} reason : {}", debugId,
                         state.toString(), statusCode, reason);
                 stopKeepAlive();
+                failConfigStream("Connection closed while receiving configuration");
                 if (state == ClientState.CLOSING) {
                     session = null;
                 } else if (state != ClientState.IDLE) {
@@ -572,7 +891,7 @@ class LxWsClient {
                 String s = Hex.encodeHexString(data);
                 logger.trace("[{}] Binary message: length {}: {}", debugId, length, s);
             }
-            synchronized (state) {
+            synchronized (stateLock) {
                 if (state != ClientState.RUNNING) {
                     return;
                 }
@@ -600,20 +919,10 @@ class LxWsClient {
                         switch (header.type) {
                             case EVENT_TABLE_OF_VALUE_STATES:
                                 stopResponseTimeout();
-                                while (length > 0) {
-                                    LxWsStateUpdateEvent event = new LxWsStateUpdateEvent(true, data, offset);
-                                    offset += event.getSize();
-                                    length -= event.getSize();
-                                    notifyMaster(EventType.STATE_UPDATE, null, event);
-                                }
+                                queueStateUpdates(true, data, offset, length);
                                 break;
                             case EVENT_TABLE_OF_TEXT_STATES:
-                                while (length > 0) {
-                                    LxWsStateUpdateEvent event = new LxWsStateUpdateEvent(false, data, offset);
-                                    offset += event.getSize();
-                                    length -= event.getSize();
-                                    notifyMaster(EventType.STATE_UPDATE, null, event);
-                                }
+                                queueStateUpdates(false, data, offset, length);
                                 break;
                             case KEEPALIVE_RESPONSE:
                             case TEXT_MESSAGE:
@@ -629,8 +938,115 @@ class LxWsClient {
             }
         }
 
-        @OnWebSocketMessage
-        public void onMessage(String msg) {
+        /**
+         * Passes a table of state updates to the {@link LxServer} thread, either as a whole or through the conflater
+         *
+         * @param valueStates
+         *            true if events in the table update double values, false if they update text messages
+         * @param data
+         *            buffer with binary message received from Miniserver
+         * @param offset
+         *            offset in buffer where the table starts
+         * @param length
+         *            length of the table in bytes
+         */
+        private void queueStateUpdates(boolean valueStates, byte data[], int offset, int length) {
+            LxStateUpdateConflater pending = conflater;
+            if (pending == null) {
+                if (!notifyMaster(EventType.STATE_UPDATE, null,
+                        new LxWsStateUpdateTable(valueStates, data, offset, length))) {
+                    scheduleStateResync();
+                }
+                return;
+            }
+            boolean notify = false;
+            try {
+                cursor.reset(valueStates, data, offset, length);
+                while (cursor.next()) {
+                    notify |= pending.offer(cursor.getUuidMsb(), cursor.getUuidLsb(), cursor.getValue(),
+                            cursor.getText());
+                }
+            } finally {
+                if (notify) {
+                    notifyMaster(EventType.STATE_UPDATES_PENDING, null, pending);
+                }
+            }
+        }
+
+        /**
+         * Receives frames of text messages. Text messages are not received with a message callback, because the
+         * websocket client would either keep the whole configuration in memory or process each message by a different
+         * thread. Frames are received in order by one websocket thread, so short responses are processed in the order
+         * they were sent, and only the configuration is streamed to the parser, while it is still being received.
+         *
+         * @param frame
+         *            received frame
+         */
+        @OnWebSocketFrame
+        public void onFrame(Frame frame) {
+            Frame.Type type = frame.getType();
+            if (type == Frame.Type.TEXT) {
+                receivingText = true;
+                synchronized (stateLock) {
+                    if (state == ClientState.UPDATING_CONFIGURATION && configStream == null) {
+                        // Miniserver responded, the response timeout now limits time between frames of the
+                        // configuration, so a stalled transfer is detected, but not the whole transfer and parsing
+                        configStream = new LxWsMessageStream();
+                        Reader reader = new InputStreamReader(configStream, StandardCharsets.UTF_8);
+                        CONFIG_EXECUTOR.execute(() -> receiveConfiguration(reader, true));
+                    }
+                }
+            } else if (type != Frame.Type.CONTINUATION || !receivingText) {
+                return;
+            }
+            boolean last = frame.isFin();
+            if (last) {
+                receivingText = false;
+            }
+            LxWsMessageStream stream = configStream;
+            if (stream != null) {
+                // time spent waiting for the parser is not counted as waiting for the Miniserver
+                stopResponseTimeout();
+                try {
+                    stream.append(frame.getPayload(), last);
+                } catch (InterruptedException e) {
+                    stream.fail("Interrupted while receiving configuration");
+                    last = true;
+                }
+                if (last) {
+                    configStream = null;
+                } else {
+                    synchronized (stateLock) {
+                        if (configStream == stream) {
+                            startResponseTimeout();
+                        }
+                    }
+                }
+                return;
+            }
+            ByteBuffer payload = frame.getPayload();
+            if (payload != null && payload.hasRemaining()) {
+                byte[] data = new byte[payload.remaining()];
+                payload.slice().get(data);
+                long size = (long) textBuffer.size() + data.length;
+                if (size > maxTextMsgSize * 1024L) {
+                    // the websocket policy does not limit messages received as frames
+                    textBuffer.reset();
+                    receivingText = false;
+                    notifyAndClose(OfflineReason.COMMUNICATION_ERROR,
+                            "Text message size " + size + " exceeds maximum size " + maxTextMsgSize * 1024L);
+                    return;
+                }
+                textBuffer.write(data, 0, data.length);
+            }
+            if (last) {
+                String msg = new String(textBuffer.toByteArray(), StandardCharsets.UTF_8);
+                textBuffer.reset();
+                onMessage(msg);
+            }
+        }
+
+        private void onMessage(String msg) {
             if (logger.isTraceEnabled()) {
                 String trace = msg;
                 if (trace.length() > 100) {
@@ -638,7 +1054,7 @@ class LxWsClient {
                 }
                 logger.trace("[{}] received message in state {}: {}", debugId, state.toString(), trace);
             }
-            synchronized (state) {
+            synchronized (stateLock) {
                 try {
                     LxJsonResponse resp;
                     switch (state) {
@@ -649,13 +1065,25 @@ class LxWsClient {
                             break;
                         case CONNECTED:
                             // expecting a key to hash credentials
-                            resp = new Gson().fromJson(msg, LxJsonResponse.class);
+                            resp = GSON.fromJson(msg, LxJsonResponse.class);
                             if (resp.LL.Code == 420) {
                                 notifyAndClose(OfflineReason.AUTHENTICATION_TIMEOUT,
                                         "Timeout on authentication procedure, response : " + resp.LL.value);
                             } else if (resp.LL.control.equals(CMD_GET_KEY) && resp.LL.Code == 200) {
-                                String credentials = hashCredentials(resp.LL.value);
-                                if (credentials != null) {
+                                String key = resp.LL.value.getAsString();
+                                LxWsToken tok = token;
+                                String tokenHash = null;
+                                if (tok != null && tokensEnabled && tok.isValid()) {
+                                    tokenHash = hmac(tok.getHashAlg(), key, tok.getToken());
+                                }
+                                String credentials = tokenHash == null ? hashCredentials(key) : null;
+                                tokenAuthentication = tokenHash != null;
+                                if (tokenHash != null) {
+                                    logger.debug("[{}] Authenticating with token", debugId);
+                                    sendString(CMD_AUTH_WITH_TOKEN + tokenHash + "/" + user);
+                                    setClientState(ClientState.AUTHENTICATING);
+                                    startResponseTimeout();
+                                } else if (credentials != null) {
                                     sendString(CMD_AUTHENTICATE + credentials);
                                     setClientState(ClientState.AUTHENTICATING);
                                     startResponseTimeout();
@@ -665,33 +1093,74 @@ class LxWsClient {
                             }
                             break;
                         case AUTHENTICATING:
-                            resp = new Gson().fromJson(msg, LxJsonResponse.class);
-                            if (resp.LL.Code == 401) {
-                                notifyAndClose(OfflineReason.UNAUTHORIZED, "Websocket credentials unauthorized.");
+                            resp = GSON.fromJson(msg, LxJsonResponse.class);
+                            if (resp.LL.Code == 200) {
+                                if (tokenAuthentication && !commandOnly) {
+                                    long validUntil = getLong(resp.LL.value, "validUntil");
+                                    if (validUntil > 0) {
+                                        token.refreshed(validUntil);
+                                    }
+                                }
+                                if (commandOnly) {
+                                    logger.debug("[{}] Command websocket authentication successfull.", debugId);
+                                    stopResponseTimeout();
+                                    setClientState(ClientState.RUNNING);
+                                } else {
+                                    logger.debug("[{}] Websocket authentication successfull.", debugId);
+                                    requestConfiguration();
+                                }
                             } else if (resp.LL.Code == 420) {
                                 notifyAndClose(OfflineReason.AUTHENTICATION_TIMEOUT,
                                         "Timeout on authentication procedure, response : " + resp.LL.value);
-                            } else if (resp.LL.Code == 200) {
-                                logger.debug("[{}] Websocket authentication successfull.", debugId);
-                                sendString(CMD_GET_APP_CONFIG);
-                                setClientState(ClientState.UPDATING_CONFIGURATION);
+                            } else if (tokenAuthentication) {
+                                // token not accepted, authenticate with credentials and do not use tokens anymore
+                                disableTokens("authentication with token failed with code " + resp.LL.Code);
+                                tokenAuthentication = false;
+                                sendString(CMD_GET_KEY);
+                                setClientState(ClientState.CONNECTED);
                                 startResponseTimeout();
+                            } else if (resp.LL.Code == 401) {
+                                notifyAndClose(OfflineReason.UNAUTHORIZED, "Websocket credentials unauthorized.");
                             }
                             break;
-                        case UPDATING_CONFIGURATION:
-                            LxJsonApp3 config = new Gson().fromJson(msg, LxJsonApp3.class);
-                            if (config != null) {
-                                logger.debug("[{}] Received configuration from server", debugId);
-                                notifyMaster(EventType.RECEIVED_CONFIG, null, config);
-                                sendString(CMD_ENABLE_UPDATES);
-                                setClientState(ClientState.RUNNING);
-                                startResponseTimeout();
-                                notifyMaster(EventType.SERVER_ONLINE, null, null);
+                        case CHECKING_CONFIGURATION:
+                            resp = GSON.fromJson(msg, LxJsonResponse.class);
+                            LxConfigCache cache = configCache;
+                            Reader cachedConfig = null;
+                            if (cache != null && resp.LL.Code == 200 && resp.LL.value != null
+                                    && resp.LL.value.isJsonPrimitive()
+                                    && resp.LL.value.getAsString().equals(cache.getVersion())) {
+                                cachedConfig = cache.openReader();
+                            }
+                            if (cachedConfig != null) {
+                                logger.debug("[{}] Configuration not changed, using cached version {}", debugId,
+                                        cache.getVersion());
+                                setClientState(ClientState.UPDATING_CONFIGURATION);
+                                // reading the cached configuration does not wait for the Miniserver
+                                stopResponseTimeout();
+                                Reader reader = cachedConfig;
+                                CONFIG_EXECUTOR.execute(() -> receiveConfiguration(reader, false));
                             } else {
-                                notifyAndClose(OfflineReason.INTERNAL_ERROR, "Error processing received configuration");
+                                logger.debug("[{}] Configuration changed, downloading it", debugId);
+                                sendString(CMD_GET_APP_CONFIG);
+                                setClientState(ClientState.UPDATING_CONFIGURATION);
+                                startResponseTimeout();
                             }
                             break;
                         case RUNNING:
+                            // responses to commands sent to controls
+                            try {
+                                resp = GSON.fromJson(msg, LxJsonResponse.class);
+                                if (resp != null && resp.LL != null && resp.LL.control != null) {
+                                    if (!processTokenResponse(resp.LL)) {
+                                        commands.acknowledge(resp.LL.control, resp.LL.Code);
+                                    }
+                                }
+                            } catch (JsonSyntaxException e) {
+                                logger.debug("[{}] Unexpected message received in running state: {}", debugId,
+                                        e.getMessage());
+                            }
+                            break;
                         case CLOSING:
                         default:
                             break;
@@ -714,6 +1183,43 @@ class LxWsClient {
             }
         }
 
+        /**
+         * Send a string to the Miniserver without waiting for the write to complete
+         *
+         * @param string
+         *            string to send
+         * @return
+         *         future completed when the string is written or when sending failed
+         */
+        private CompletableFuture<Void> sendStringAsync(String string) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            synchronized (stateLock) {
+                if (session != null && state != ClientState.IDLE && state != ClientState.CONNECTING
+                        && state != ClientState.CLOSING) {
+                    logger.debug("[{}] sending command: {}", debugId, string);
+                    pendingActions.incrementAndGet();
+                    session.getRemote().sendString(string, new WriteCallback() {
+                        @Override
+                        public void writeSuccess() {
+                            pendingActions.decrementAndGet();
+                            result.complete(null);
+                        }
+
+                        @Override
+                        public void writeFailed(Throwable x) {
+                            pendingActions.decrementAndGet();
+                            logger.debug("[{}] failed sending command {}: {}", debugId, string, x.getMessage());
+                            result.completeExceptionally(x instanceof IOException ? x : new IOException(x));
+                        }
+                    });
+                } else {
+                    logger.debug("[{}] NOT sending command, state {}: {}", debugId, state.toString(), string);
+                    result.completeExceptionally(new IOException("Miniserver not connected"));
+                }
+            }
+            return result;
+        }
+
         /**
          * Sends a string command to the Miniserver
          *
@@ -723,7 +1229,7 @@ class LxWsClient {
          *             exception when communication error occurs
          */
         private void sendString(String string) throws IOException {
-            synchronized (state) {
+            synchronized (stateLock) {
                 if (session != null && state != ClientState.IDLE && state != ClientState.CONNECTING
                         && state != ClientState.CLOSING) {
                     logger.debug("[{}] sending command: {}", debugId, string);
@@ -734,6 +1240,332 @@ class LxWsClient {
             }
         }
 
+        /**
+         * Requests Miniserver's configuration. If there is a cached configuration, its version is checked first.
+         *
+         * @throws IOException
+         *             when communication error with Miniserver occurs
+         */
+        private void requestConfiguration() throws IOException {
+            LxConfigCache cache = configCache;
+            if (cache != null && cache.getVersion() != null) {
+                sendString(CMD_GET_APP_VERSION);
+                setClientState(ClientState.CHECKING_CONFIGURATION);
+            } else {
+                sendString(CMD_GET_APP_CONFIG);
+                setClientState(ClientState.UPDATING_CONFIGURATION);
+            }
+            startResponseTimeout();
+        }
+
+        /**
+         * Parses Miniserver's configuration from a stream and passes its rooms, categories and controls to the server
+         * as they are parsed. This method runs on the configuration executor and does not hold the client's state lock
+         * while reading the stream, so keep-alives, response timeout and commands are not delayed by parsing. Also,
+         * server thread may need the lock, when the event queue is full and this thread waits for free space. Client
+         * moves to the next state only when the whole configuration is parsed. Response timeout is stopped before this
+         * method is called, so the time of transfer and parsing is not limited by it.
+         *
+         * @param reader
+         *            stream with configuration, received from the Miniserver or read from cache
+         * @param received
+         *            true if configuration is received from the Miniserver, false if it is read from cache
+         */
+        private void receiveConfiguration(Reader reader, boolean received) {
+            LxConfigCache cache = configCache;
+            Reader source = received && cache != null ? cache.saving(reader) : reader;
+            LxJsonApp3 config;
+            try (Reader in = source) {
+                config = new LxConfigReader().read(in,
+                        piece -> notifyMaster(EventType.CONFIG_PIECE, null, piece));
+            } catch (IOException | JsonParseException e) {
+                logger.debug("[{}] Error processing configuration: {}", debugId, e.getMessage());
+                synchronized (stateLock) {
+                    if (received) {
+                        if (cache != null) {
+                            cache.discard();
+                        }
+                        // when connection was already closed, going offline was reported
+                        if (state == ClientState.UPDATING_CONFIGURATION) {
+                            notifyAndClose(OfflineReason.INTERNAL_ERROR, "Error processing received configuration");
+                        }
+                    } else if (state == ClientState.UPDATING_CONFIGURATION) {
+                        // cached configuration is damaged, download it again
+                        cache.clear();
+                        try {
+                            sendString(CMD_GET_APP_CONFIG);
+                            startResponseTimeout();
+                        } catch (IOException ex) {
+                            notifyAndClose(OfflineReason.COMMUNICATION_ERROR,
+                                    "Communication error when requesting configuration : " + ex.getMessage());
+                        }
+                    }
+                }
+                return;
+            }
+            synchronized (stateLock) {
+                if (received && cache != null) {
+                    cache.commit(config.lastModified);
+                }
+                if (state != ClientState.UPDATING_CONFIGURATION) {
+                    return;
+                }
+                logger.debug("[{}] Received configuration from {}", debugId, received ? "server" : "cache");
+                try {
+                    configurationReceived(config);
+                } catch (IOException e) {
+                    notifyAndClose(OfflineReason.COMMUNICATION_ERROR,
+                            "Communication error when processing configuration : " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Passes Miniserver's configuration to the server and starts receiving state updates
+         *
+         * @param config
+         *            configuration received from the Miniserver or read from cache
+         * @throws IOException
+         *             when communication error with Miniserver occurs
+         */
+        private void configurationReceived(LxJsonApp3 config) throws IOException {
+            notifyMaster(EventType.RECEIVED_CONFIG, null, config);
+            sendString(CMD_ENABLE_UPDATES);
+            setClientState(ClientState.RUNNING);
+            startResponseTimeout();
+            notifyMaster(EventType.SERVER_ONLINE, null, null);
+            startTokenHandling();
+        }
+
+        /**
+         * Starts acquiring a new authentication token, if there is no valid token, or schedules refresh of existing
+         * token. Command-only client uses the token, but does not acquire or refresh it.
+         *
+         * @throws IOException
+         *             when communication error with Miniserver occurs
+         */
+        private void startTokenHandling() throws IOException {
+            LxWsToken tok = token;
+            if (tok == null || commandOnly || !tokensEnabled) {
+                return;
+            }
+            if (tok.isValid()) {
+                scheduleTokenRefresh(tok);
+            } else {
+                logger.debug("[{}] Acquiring authentication token", debugId);
+                sendString(CMD_GET_KEY2 + user);
+            }
+        }
+
+        /**
+         * Stops using tokens, after the Miniserver refused a token request. Further requests would be refused too and
+         * each refused authentication may count as a failed login. Master client forgets its token.
+         *
+         * @param reason
+         *            reason of disabling tokens
+         */
+        private void disableTokens(String reason) {
+            if (tokensEnabled) {
+                logger.warn("[{}] Token authentication disabled, {}", debugId, reason);
+                tokensEnabled = false;
+            }
+            LxWsToken tok = token;
+            if (tok != null && !commandOnly) {
+                tok.clear();
+            }
+            stopTokenRefresh();
+        }
+
+        /**
+         * Schedules refresh of the token, when half of its remaining validity time passes
+         *
+         * @param tok
+         *            token to refresh
+         */
+        private void scheduleTokenRefresh(LxWsToken tok) {
+            long delay = Math.max(TOKEN_MIN_REFRESH_DELAY, tok.getSecondsLeft() / 2);
+            logger.debug("[{}] Token refresh in {} s", debugId, delay);
+            if (tokenRefresh != null) {
+                tokenRefresh.cancel(false);
+            }
+            tokenRefresh = SCHEDULER.schedule(() -> {
+                synchronized (stateLock) {
+                    tokenRefresh = null;
+                    if (state == ClientState.RUNNING) {
+                        try {
+                            // a new key is needed to hash the token
+                            refreshingToken = true;
+                            sendString(CMD_GET_KEY);
+                        } catch (IOException e) {
+                            logger.debug("[{}] Error requesting key to refresh token: {}", debugId, e.getMessage());
+                        }
+                    }
+                }
+            }, delay, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Processes responses to requests sent to acquire or refresh authentication token, when client is running.
+         *
+         * @param response
+         *            response received from the Miniserver
+         * @return
+         *         true if response was related to the token
+         * @throws IOException
+         *             when communication error with Miniserver occurs
+         */
+        private boolean processTokenResponse(LxJsonResponse.LxJsonLL response) throws IOException {
+            LxWsToken tok = token;
+            String control = response.control;
+            if (tok == null || commandOnly || !tokensEnabled) {
+                return false;
+            }
+            if (control.contains(CMD_GET_KEY2)) {
+                // key and salt to hash credentials for a new token
+                String key = getString(response.value, "key");
+                String salt = getString(response.value, "salt");
+                String hashAlg = getString(response.value, "hashAlg");
+                if (hashAlg == null) {
+                    hashAlg = "SHA1";
+                }
+                String pwHash = digest(hashAlg, password + ":" + salt);
+                String hash = pwHash != null ? hmac(hashAlg, key, user + ":" + pwHash.toUpperCase()) : null;
+                if (response.Code == 200 && hash != null) {
+                    tokenHashAlg = hashAlg;
+                    sendString(CMD_GET_TOKEN + hash + "/" + user + "/" + TOKEN_PERMISSION + "/" + tok.getClientUuid()
+                            + "/" + TOKEN_CLIENT_INFO);
+                } else {
+                    disableTokens("key request for a token failed with code " + response.Code);
+                }
+                return true;
+            }
+            if (control.contains(CMD_GET_TOKEN)) {
+                String value = getString(response.value, "token");
+                if (response.Code == 200 && value != null) {
+                    tok.set(value, getLong(response.value, "validUntil"), tokenHashAlg);
+                    logger.debug("[{}] Acquired authentication token valid for {} s", debugId, tok.getSecondsLeft());
+                    scheduleTokenRefresh(tok);
+                } else {
+                    disableTokens("token request failed with code " + response.Code);
+                }
+                return true;
+            }
+            if (control.equals(CMD_GET_KEY) && refreshingToken) {
+                refreshingToken = false;
+                String hash = response.Code == 200 && tok.getToken() != null
+                        ? hmac(tok.getHashAlg(), response.value.getAsString(), tok.getToken())
+                        : null;
+                if (hash != null) {
+                    sendString(CMD_REFRESH_TOKEN + hash + "/" + user);
+                }
+                return true;
+            }
+            if (control.contains(CMD_REFRESH_TOKEN)) {
+                long validUntil = getLong(response.value, "validUntil");
+                if (response.Code == 200 && validUntil > 0) {
+                    tok.refreshed(validUntil);
+                    logger.debug("[{}] Refreshed authentication token valid for {} s", debugId,
+                            tok.getSecondsLeft());
+                    scheduleTokenRefresh(tok);
+                } else {
+                    disableTokens("token refresh failed with code " + response.Code);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Calculates a keyed hash of data, as required by Miniserver's authentication
+         *
+         * @param hashAlg
+         *            hash algorithm used by the Miniserver (SHA1 or SHA256)
+         * @param keyHex
+         *            hash key received from the Miniserver, in hexadecimal form
+         * @param data
+         *            data to hash
+         * @return
+         *         hash in hexadecimal form or null if it could not be calculated
+         */
+        private String hmac(String hashAlg, String keyHex, String data) {
+            if (keyHex == null || data == null) {
+                return null;
+            }
+            try {
+                String algorithm = "SHA256".equalsIgnoreCase(hashAlg) ? "HmacSHA256" : "HmacSHA1";
+                byte[] hashKeyBytes = Hex.decodeHex(keyHex.toCharArray());
+                Mac mac = Mac.getInstance(algorithm);
+                mac.init(new SecretKeySpec(hashKeyBytes, algorithm));
+                return Hex.encodeHexString(mac.doFinal(data.getBytes("UTF-8")));
+            } catch (DecoderException | NoSuchAlgorithmException | InvalidKeyException
+                    | UnsupportedEncodingException e) {
+                logger.debug("[{}] Error hashing with key: {}", debugId, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Calculates a hash of data
+         *
+         * @param hashAlg
+         *            hash algorithm used by the Miniserver (SHA1 or SHA256)
+         * @param data
+         *            data to hash
+         * @return
+         *         hash in hexadecimal form or null if it could not be calculated
+         */
+        private String digest(String hashAlg, String data) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA256".equalsIgnoreCase(hashAlg) ? "SHA-256" : "SHA-1");
+                return Hex.encodeHexString(md.digest(data.getBytes("UTF-8")));
+            } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+                logger.debug("[{}] Error hashing: {}", debugId, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Gets a string field of a JSON object received from the Miniserver
+         *
+         * @param value
+         *            JSON object with the field (can be null)
+         * @param name
+         *            name of the field
+         * @return
+         *         value of the field or null if there is no such field
+         */
+        private String getString(JsonElement value, String name) {
+            if (value != null && value.isJsonObject()) {
+                JsonElement element = ((JsonObject) value).get(name);
+                if (element != null && element.isJsonPrimitive()) {
+                    return element.getAsString();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets a numeric field of a JSON object received from the Miniserver
+         *
+         * @param value
+         *            JSON object with the field (can be null)
+         * @param name
+         *            name of the field
+         * @return
+         *         value of the field or 0 if there is no such field or it is not a number
+         */
+        private long getLong(JsonElement value, String name) {
+            String element = getString(value, name);
+            if (element != null) {
+                try {
+                    return Long.parseLong(element);
+                } catch (NumberFormatException e) {
+                    logger.debug("[{}] Invalid number in {}: {}", debugId, name, element);
+                }
+            }
+            return 0;
+        }
+
         /**
          * Hash user name and password according to the algorithm required by the Miniserver
          *
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream of a text message received over the websocket in frames.
+ * <p>
+ * Websocket thread appends payload of each frame as it is received, in order, and another thread reads the message
+ * while it is still being received. Only a limited number of frames waits for reading, when the reading thread is
+ * slower, websocket thread waits until it catches up, so the whole message is never kept in memory.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxWsMessageStream extends InputStream {
+    // frames waiting for reading, before websocket thread has to wait
+    private static final int MAX_PENDING_FRAMES = 64;
+    private static final long APPEND_WAIT_MS = 100;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>(MAX_PENDING_FRAMES);
+    private byte[] current = null;
+    private int position = 0;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    /**
+     * Append payload of a received frame to the message. Called by the websocket thread only.
+     *
+     * @param payload
+     *            payload of the frame (can be null), it is copied, so the buffer can be reused
+     * @param last
+     *            true if this is the last frame of the message
+     * @throws InterruptedException
+     *             when websocket thread is interrupted while waiting for the reading thread
+     */
+    void append(ByteBuffer payload, boolean last) throws InterruptedException {
+        if (payload != null && payload.hasRemaining()) {
+            byte[] data = new byte[payload.remaining()];
+            payload.slice().get(data);
+            offer(data);
+        }
+        if (last) {
+            offer(END);
+        }
+    }
+
+    /**
+     * End the message, when it can't be received completely. Reading thread gets an exception, when it reaches the
+     * end of received data.
+     *
+     * @param reason
+     *            reason of the failure
+     */
+    void fail(String reason) {
+        failure = new IOException(reason);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int count = read(single, 0, 1);
+        return count < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (current == null || position >= current.length) {
+            if (current == END) {
+                return -1;
+            }
+            current = next();
+            position = 0;
+            if (current == END) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        frames.clear();
+    }
+
+    private byte[] next() throws IOException {
+        try {
+            byte[] next;
+            while ((next = frames.poll(APPEND_WAIT_MS, TimeUnit.MILLISECONDS)) == null) {
+                IOException e = failure;
+                if (e != null) {
+                    throw e;
+                }
+            }
+            return next;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading message");
+        }
+    }
+
+    private void offer(byte[] data) throws InterruptedException {
+        while (!closed && !frames.offer(data, APPEND_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            // reading thread is behind, wait until it reads more or closes the stream
+        }
+    }
+}
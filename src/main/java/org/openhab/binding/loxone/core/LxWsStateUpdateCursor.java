@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A cursor that walks state update events in a table received from Loxone Miniserver in a binary message.
+ * <p>
+ * The cursor reads events in place, directly from the buffer with received message, and exposes fields of the event
+ * it currently points to. One cursor object is reused for all tables, so walking a table of value states does not
+ * allocate any objects per event. Text of a text state event is converted to a string only on request.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxWsStateUpdateCursor {
+    private static final int VALUE_EVENT_SIZE = 24;
+    private static final int TEXT_EVENT_HEADER_SIZE = 36;
+
+    private byte[] data = null;
+    private ByteBuffer buffer = null;
+    private boolean valueStates;
+    private int limit = 0;
+    private int next = 0;
+
+    private long uuidMsb;
+    private long uuidLsb;
+    private double value;
+    private int textOffset;
+    private int textLength;
+
+    /**
+     * Position cursor before the first event of a table
+     *
+     * @param table
+     *            table with state update events
+     */
+    void reset(LxWsStateUpdateTable table) {
+        reset(table.isValueStates(), table.getData(), 0, table.getData().length);
+    }
+
+    /**
+     * Position cursor before the first event of a table
+     *
+     * @param valueStates
+     *            true if events in the table update double values, false if they update text messages
+     * @param data
+     *            buffer with binary message received from Miniserver
+     * @param offset
+     *            offset in buffer where the table starts
+     * @param length
+     *            length of the table in bytes
+     */
+    void reset(boolean valueStates, byte data[], int offset, int length) {
+        if (this.data != data) {
+            this.data = data;
+            buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.valueStates = valueStates;
+        next = offset;
+        limit = offset + length;
+    }
+
+    /**
+     * Move cursor to the next event in the table
+     *
+     * @return
+     *         true if cursor points to a next event, false if there are no more events
+     * @throws IndexOutOfBoundsException
+     *             when event in the table is malformed
+     */
+    boolean next() throws IndexOutOfBoundsException {
+        int offset = next;
+        if (offset >= limit) {
+            return false;
+        }
+        if (limit - offset < VALUE_EVENT_SIZE) {
+            throw new IndexOutOfBoundsException();
+        }
+        uuidMsb = ((buffer.getInt(offset) & 0xFFFFFFFFL) << 32) | ((buffer.getShort(offset + 4) & 0xFFFFL) << 16)
+                | (buffer.getShort(offset + 6) & 0xFFFFL);
+        uuidLsb = Long.reverseBytes(buffer.getLong(offset + 8));
+
+        if (valueStates) {
+            value = buffer.getDouble(offset + 16);
+            next = offset + VALUE_EVENT_SIZE;
+            return true;
+        }
+
+        // text event has icon's UUID after state's UUID, which is not used
+        if (limit - offset < TEXT_EVENT_HEADER_SIZE) {
+            throw new IndexOutOfBoundsException();
+        }
+        textLength = buffer.getInt(offset + 32);
+        textOffset = offset + TEXT_EVENT_HEADER_SIZE;
+        if (textLength < 0 || limit - textOffset < textLength) {
+            throw new IndexOutOfBoundsException();
+        }
+        value = -1;
+        // text is padded to a multiple of 4 bytes
+        next = textOffset + ((textLength + 3) & ~3);
+        return true;
+    }
+
+    /**
+     * Get most significant 64 bits of the UUID of the state in current event
+     *
+     * @return
+     *         most significant bits of the UUID
+     */
+    long getUuidMsb() {
+        return uuidMsb;
+    }
+
+    /**
+     * Get least significant 64 bits of the UUID of the state in current event
+     *
+     * @return
+     *         least significant bits of the UUID
+     */
+    long getUuidLsb() {
+        return uuidLsb;
+    }
+
+    /**
+     * Get value of the state in current event
+     *
+     * @return
+     *         value of the state or -1 for text state events
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Get text value of the state in current event
+     *
+     * @return
+     *         text value of the state or null for value state events
+     */
+    String getText() {
+        if (valueStates) {
+            return null;
+        }
+        return new String(data, textOffset, textLength, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.util.Arrays;
+
+/**
+ * A table of control's state update events, received from Loxone Miniserver in one binary message.
+ * <p>
+ * Binary message is copied as a whole, so websocket client can pass it to the {@link LxServer} thread in a single
+ * event, where all state updates from the table are applied in one pass.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxWsStateUpdateTable {
+    private final boolean valueStates;
+    private final byte[] data;
+
+    /**
+     * Create a new table of state update events from a binary message
+     *
+     * @param valueStates
+     *            true if events in the table update double values, false if they update text messages
+     * @param data
+     *            buffer with binary message received from Miniserver
+     * @param offset
+     *            offset in buffer where the table starts
+     * @param length
+     *            length of the table in bytes
+     */
+    LxWsStateUpdateTable(boolean valueStates, byte data[], int offset, int length) {
+        this.valueStates = valueStates;
+        this.data = Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * Check type of state update events in the table
+     *
+     * @return
+     *         true if events in the table update double values, false if they update text messages
+     */
+    boolean isValueStates() {
+        return valueStates;
+    }
+
+    /**
+     * Get binary content of the table
+     *
+     * @return
+     *         buffer with state update events, starting at offset 0
+     */
+    byte[] getData() {
+        return data;
+    }
+}
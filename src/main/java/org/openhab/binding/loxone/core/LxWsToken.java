@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2010-2017 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.loxone.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authentication token acquired from the Miniserver.
+ * <p>
+ * A token lets the websocket client authenticate with a single request after the connection is established, instead
+ * of hashing user's credentials each time. Token is valid until a point in time given by the Miniserver and can be
+ * refreshed before it expires. It is kept in a file, so it can be used after binding restart. The file is readable and
+ * writable only by its owner, as the token lets anyone log in to the Miniserver.
+ *
+ * @author agent - initial commit
+ *
+ */
+class LxWsToken {
+    // Miniserver gives time in seconds since 1.1.2009 00:00:00 UTC
+    private static final long LOXONE_EPOCH = 1230768000L;
+    // token is not used if it expires in less time
+    private static final long MIN_VALIDITY = 60;
+
+    private static final String PROP_TOKEN = "token";
+    private static final String PROP_VALID_UNTIL = "validUntil";
+    private static final String PROP_HASH_ALG = "hashAlg";
+    private static final String PROP_CLIENT_UUID = "clientUuid";
+
+    private final int debugId;
+    private final File file;
+    private String token = null;
+    private long validUntil = 0;
+    private String hashAlg = "SHA1";
+    private String clientUuid = null;
+
+    private Logger logger = LoggerFactory.getLogger(LxWsToken.class);
+
+    /**
+     * Create a token and load it from a file, if it exists
+     *
+     * @param debugId
+     *            instance of the client used for debugging purposes only
+     * @param file
+     *            file to keep the token in or null if token should not be kept
+     */
+    LxWsToken(int debugId, File file) {
+        this.debugId = debugId;
+        this.file = file;
+        load();
+        if (clientUuid == null) {
+            clientUuid = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Check if token can be used for authentication
+     *
+     * @return
+     *         true if there is a token and it does not expire soon
+     */
+    synchronized boolean isValid() {
+        return token != null && getSecondsLeft() > MIN_VALIDITY;
+    }
+
+    /**
+     * Get time left until token expires
+     *
+     * @return
+     *         time in seconds
+     */
+    synchronized long getSecondsLeft() {
+        return validUntil + LOXONE_EPOCH - System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Get token value
+     *
+     * @return
+     *         token or null if there is no token
+     */
+    synchronized String getToken() {
+        return token;
+    }
+
+    /**
+     * Get name of hash algorithm that has to be used with this token
+     *
+     * @return
+     *         hash algorithm name (SHA1 or SHA256)
+     */
+    synchronized String getHashAlg() {
+        return hashAlg;
+    }
+
+    /**
+     * Get identifier of this client, sent to the Miniserver when requesting a token
+     *
+     * @return
+     *         client's UUID
+     */
+    synchronized String getClientUuid() {
+        return clientUuid;
+    }
+
+    /**
+     * Set a new token received from the Miniserver and save it to the file
+     *
+     * @param token
+     *            token value
+     * @param validUntil
+     *            expiry time in seconds since 1.1.2009
+     * @param hashAlg
+     *            hash algorithm to use with the token
+     */
+    synchronized void set(String token, long validUntil, String hashAlg) {
+        this.token = token;
+        this.validUntil = validUntil;
+        if (hashAlg != null) {
+            this.hashAlg = hashAlg;
+        }
+        save();
+    }
+
+    /**
+     * Set a new expiry time after the token was refreshed and save it to the file
+     *
+     * @param validUntil
+     *            expiry time in seconds since 1.1.2009
+     */
+    synchronized void refreshed(long validUntil) {
+        this.validUntil = validUntil;
+        save();
+    }
+
+    /**
+     * Remove the token, when Miniserver does not accept it anymore
+     */
+    synchronized void clear() {
+        token = null;
+        validUntil = 0;
+        save();
+    }
+
+    private void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+            token = props.getProperty(PROP_TOKEN);
+            validUntil = Long.parseLong(props.getProperty(PROP_VALID_UNTIL, "0"));
+            hashAlg = props.getProperty(PROP_HASH_ALG, hashAlg);
+            clientUuid = props.getProperty(PROP_CLIENT_UUID);
+            logger.debug("[{}] Loaded token valid for {} s", debugId, getSecondsLeft());
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("[{}] Failed to load token from {}: {}", debugId, file, e.getMessage());
+            token = null;
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        Properties props = new Properties();
+        if (token != null) {
+            props.setProperty(PROP_TOKEN, token);
+            props.setProperty(PROP_VALID_UNTIL, Long.toString(validUntil));
+        }
+        props.setProperty(PROP_HASH_ALG, hashAlg);
+        props.setProperty(PROP_CLIENT_UUID, clientUuid);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            logger.debug("[{}] Failed to create folder {}", debugId, dir);
+            return;
+        }
+        Path path = file.toPath();
+        try {
+            if (!Files.exists(path)) {
+                Files.createFile(path);
+            }
+            // restricted before the token is written
+            restrictAccess(path);
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to restrict access to {}: {}", debugId, file, e.getMessage());
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            props.store(out, "Loxone Miniserver token");
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to save token to {}: {}", debugId, file, e.getMessage());
+        }
+    }
+
+    /**
+     * Allow only the owner to read and write the file (POSIX permissions 0600 or owner-only flags on other file
+     * systems)
+     *
+     * @param path
+     *            file to restrict access to
+     * @throws IOException
+     *             when permissions can't be changed
+     */
+    private void restrictAccess(Path path) throws IOException {
+        if (Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            return;
+        }
+        File f = path.toFile();
+        if (!(f.setReadable(false, false) && f.setReadable(true, true) && f.setWritable(false, false)
+                && f.setWritable(true, true))) {
+            throw new IOException("File permissions not changed");
+        }
+    }
+}
@@ -10,19 +10,31 @@ package org.openhab.binding.loxone.handler;
 
 import static org.openhab.binding.loxone.LoxoneBindingConstants.*;
 
-import java.io.IOException;
+import java.io.File;
 import java.math.BigDecimal;
 import java.net.InetAddress;
+import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.library.types.PercentType;
@@ -38,14 +50,15 @@ import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.thing.binding.builder.ChannelBuilder;
 import org.eclipse.smarthome.core.thing.binding.builder.ThingBuilder;
-import org.eclipse.smarthome.core.thing.type.ChannelType;
 import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
 import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.core.types.RefreshType;
+import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.core.types.StateDescription;
 import org.eclipse.smarthome.core.types.StateOption;
 import org.openhab.binding.loxone.config.LoxoneMiniserverConfig;
 import org.openhab.binding.loxone.core.LxCategory;
+import org.openhab.binding.loxone.core.LxConfigDelta;
 import org.openhab.binding.loxone.core.LxContainer;
 import org.openhab.binding.loxone.core.LxControl;
 import org.openhab.binding.loxone.core.LxControlInfoOnlyAnalog;
@@ -71,12 +84,208 @@ import org.slf4j.LoggerFactory;
 public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServerListener {
 
     public static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Collections.singleton(THING_TYPE_MINISERVER);
+    // quiet interval of analog channels, which did not set it (milliseconds)
+    private static final long DEFAULT_QUIET_INTERVAL = 5000;
 
     private LxServer server = null;
     private LoxoneHandlerFactory factory;
     private ChannelTypeUID switchTypeId, roSwitchTypeId, rollerTypeId, infoTypeId;
     private Logger logger = LoggerFactory.getLogger(LoxoneMiniserverHandler.class);
-    private Map<ChannelUID, LxControl> controls = new HashMap<ChannelUID, LxControl>();
+    // maps are updated by the server thread and read by framework threads handling commands and links
+    private Map<ChannelUID, LxControl> controls = new ConcurrentHashMap<ChannelUID, LxControl>();
+    // controls are compared by UUID, but bindings belong to control objects of the current configuration
+    private Map<ControlKey, ChannelBinding> bindings = new ConcurrentHashMap<ControlKey, ChannelBinding>();
+    private Map<ChannelUID, CommandRoute> routes = new ConcurrentHashMap<ChannelUID, CommandRoute>();
+    // channels of each control, to find them without scanning all channels when the control is removed
+    private Map<ControlKey, List<ChannelUID>> controlChannels = new ConcurrentHashMap<ControlKey, List<ChannelUID>>();
+
+    /**
+     * Key of a control object, which is compared by identity instead of control's UUID
+     */
+    private static class ControlKey {
+        private final LxControl control;
+
+        private ControlKey(LxControl control) {
+            this.control = control;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ControlKey && ((ControlKey) o).control == control;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(control);
+        }
+    }
+
+    /**
+     * Binding of a control to its channel, built once per configuration, so state updates do not need to build channel
+     * IDs and find out the type of control again. It keeps the last state published to the channel, so the same state
+     * is not published again, unless the channel is configured to publish all updates.
+     */
+    private static class ChannelBinding {
+        private final ChannelUID channelId;
+        private final Function<LxControl, State> converter;
+        private final boolean skipUnchanged;
+        private final Throttle throttle;
+        private volatile State lastState;
+
+        private ChannelBinding(ChannelUID channelId, Function<LxControl, State> converter, boolean skipUnchanged,
+                Throttle throttle) {
+            this.channelId = channelId;
+            this.converter = converter;
+            this.skipUnchanged = skipUnchanged;
+            this.throttle = throttle;
+        }
+    }
+
+    /**
+     * Limits of publishing numeric states of a channel. A new value is published only if it differs from the last
+     * published value by more than the deadband and the minimum interval passed since the last publication. When the
+     * maximum interval passes, any changed value is published. A value held back only by the minimum interval is
+     * published as a trailing update when the interval passes, so the channel ends up with the final value. A value
+     * held back by the deadband is published as a trailing update when no new value is received for the quiet
+     * interval or when the maximum interval passes, whichever comes first. A value that keeps changing within the
+     * deadband is therefore not published, but the last value is published once the changes stop.
+     */
+    private static class Throttle {
+        private final double deadband;
+        private final double deadbandPercent;
+        private final long minInterval;
+        private final long maxInterval;
+        private final long quietInterval;
+        private long lastPublished;
+        private long lastReceived;
+        private ScheduledFuture<?> trailing;
+        private boolean closed;
+
+        private Throttle(double deadband, double deadbandPercent, long minInterval, long maxInterval,
+                long quietInterval) {
+            this.deadband = deadband;
+            this.deadbandPercent = deadbandPercent;
+            this.minInterval = minInterval;
+            this.maxInterval = maxInterval;
+            this.quietInterval = quietInterval;
+        }
+
+        private boolean isOutsideDeadband(DecimalType last, DecimalType value) {
+            double difference = Math.abs(value.doubleValue() - last.doubleValue());
+            if (deadband > 0 && difference <= deadband) {
+                return false;
+            }
+            return !(deadbandPercent > 0 && difference <= Math.abs(last.doubleValue()) * deadbandPercent / 100);
+        }
+
+        /**
+         * Find out when a new value can be published
+         *
+         * @param last
+         *            last published value
+         * @param value
+         *            new value
+         * @param now
+         *            current time (milliseconds)
+         * @return
+         *         0 to publish the value now, time to wait before it can be published (milliseconds) or -1 if the value
+         *         is never published, because it is within the deadband and there is no quiet or maximum interval
+         */
+        private long getPublishDelay(State last, State value, long now) {
+            if (!(last instanceof DecimalType) || !(value instanceof DecimalType)) {
+                return 0;
+            }
+            long elapsed = now - lastPublished;
+            long delay = -1;
+            if (isOutsideDeadband((DecimalType) last, (DecimalType) value)) {
+                delay = Math.max(minInterval - elapsed, 0);
+            } else if (quietInterval > 0) {
+                delay = Math.max(Math.max(quietInterval - (now - lastReceived), minInterval - elapsed), 0);
+            }
+            if (maxInterval > 0 && delay != 0) {
+                long maxDelay = Math.max(maxInterval - elapsed, 0);
+                delay = delay < 0 ? maxDelay : Math.min(delay, maxDelay);
+            }
+            return delay;
+        }
+
+        private void cancel() {
+            if (trailing != null) {
+                trailing.cancel(false);
+                trailing = null;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            cancel();
+        }
+    }
+
+    /**
+     * Commands accepted by a channel, built once per configuration. Commands with a fixed value (e.g. ON, UP, STOP)
+     * are found by their value and commands carrying a number by their class.
+     */
+    private static class CommandRoute {
+        private final Map<Command, Supplier<CompletableFuture<Void>>> values = new HashMap<>();
+        private final Map<Class<? extends Command>, Function<Command, CompletableFuture<Void>>> types = new HashMap<>();
+
+        private CompletableFuture<Void> dispatch(Command command) {
+            Supplier<CompletableFuture<Void>> action = values.get(command);
+            if (action != null) {
+                return action.get();
+            }
+            Function<Command, CompletableFuture<Void>> typedAction = types.get(command.getClass());
+            if (typedAction != null) {
+                return typedAction.apply(command);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static final Function<LxControl, State> SWITCH_STATE = control ->
+            toOnOff(((LxControlSwitch) control).getState());
+
+    private static final Function<LxControl, State> JALOUSIE_STATE = control -> {
+        double value = ((LxControlJalousie) control).getPosition();
+        if (value >= 0 && value <= 1) {
+            // state UP or DOWN from Loxone indicates blinds are moving up or down
+            // state UP in openHAB means blinds are fully up (0%) and DOWN means fully down (100%)
+            // so we will update only position and not up or down states
+            return new PercentType((int) (value * 100));
+        }
+        return null;
+    };
+
+    private static final Function<LxControl, State> DIGITAL_STATE = control ->
+            toOnOff(((LxControlInfoOnlyDigital) control).getValue());
+
+    private static final Function<LxControl, State> ANALOG_STATE = control ->
+            new DecimalType(((LxControlInfoOnlyAnalog) control).getValue());
+
+    private static final Function<LxControl, State> SCENE_STATE = control -> {
+        int value = ((LxControlLightController) control).getCurrentScene();
+        if (value >= 0 && value < LxControlLightController.NUM_OF_SCENES) {
+            return new DecimalType(value);
+        }
+        return null;
+    };
+
+    private static final Function<LxControl, State> RADIO_STATE = control -> {
+        int output = ((LxControlRadio) control).getActiveOutput();
+        if (output >= 0 && output <= LxControlRadio.MAX_RADIO_OUTPUTS) {
+            return new DecimalType(output);
+        }
+        return null;
+    };
+
+    private static final Function<LxControl, State> TEXT_STATE = control -> {
+        String value = ((LxControlTextState) control).getText();
+        if (value != null) {
+            return new StringType(value);
+        }
+        return null;
+    };
 
     /**
      * Create {@link LoxoneMiniserverHandler} object
@@ -110,79 +319,22 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
 
         try {
             if (command instanceof RefreshType) {
-                updateChannelStates(control);
+                updateChannelStates(control, false);
                 return;
             }
 
-            if (control instanceof LxControlSwitch) {
-                if (command instanceof OnOffType) {
-                    if ((OnOffType) command == OnOffType.ON) {
-                        if (control instanceof LxControlPushbutton) {
-                            ((LxControlPushbutton) control).pulse();
-                        } else {
-                            ((LxControlSwitch) control).on();
-                        }
-                    } else {
-                        ((LxControlSwitch) control).off();
-                    }
-                }
+            CommandRoute route = routes.get(channelUID);
+            if (route == null) {
+                logger.debug("Incompatible operation on control {}", control.getUuid().toString());
                 return;
             }
-
-            if (control instanceof LxControlJalousie) {
-                LxControlJalousie jalousie = (LxControlJalousie) control;
-                if (command instanceof PercentType) {
-                    jalousie.moveToPosition(((PercentType) command).doubleValue() / 100);
-                } else if (command instanceof UpDownType) {
-                    if ((UpDownType) command == UpDownType.UP) {
-                        jalousie.fullUp();
-                    } else {
-                        jalousie.fullDown();
-                    }
-                } else if (command instanceof StopMoveType) {
-                    if ((StopMoveType) command == StopMoveType.STOP) {
-                        jalousie.stop();
-                    }
-                }
-                return;
-            }
-
-            if (control instanceof LxControlLightController) {
-                LxControlLightController controller = (LxControlLightController) control;
-                if (command instanceof OnOffType) {
-                    if ((OnOffType) command == OnOffType.ON) {
-                        controller.allOn();
-                    } else {
-                        controller.allOff();
-                    }
-                } else if (command instanceof UpDownType) {
-                    if ((UpDownType) command == UpDownType.UP) {
-                        controller.nextScene();
-                    } else {
-                        controller.previousScene();
-                    }
-                } else if (command instanceof DecimalType) {
-                    controller.setScene(((DecimalType) command).intValue());
+            CompletableFuture<Void> result = route.dispatch(command);
+            // connection problems are reported by the server going offline, here only failed command is reported
+            result.whenComplete((r, e) -> {
+                if (e != null) {
+                    logger.warn("Command {} to control '{}' failed: {}", command, control.getName(), e.getMessage());
                 }
-                return;
-            }
-
-            if (control instanceof LxControlRadio) {
-                LxControlRadio radio = (LxControlRadio) control;
-                if (command instanceof OnOffType) {
-                    if ((OnOffType) command == OnOffType.OFF) {
-                        radio.setOutput(0);
-                    }
-                } else if (command instanceof DecimalType) {
-                    radio.setOutput(((DecimalType) command).intValue());
-                }
-                return;
-            }
-
-            logger.debug("Incompatible operation on control {}", control.getUuid().toString());
-
-        } catch (IOException e) {
-            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e.getMessage());
+            });
         } catch (Exception e) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, e.getMessage());
         }
@@ -193,7 +345,8 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
         logger.debug("Channel linked: {}", channelUID.getAsString());
         LxControl control = getControlFromChannelUID(channelUID);
         if (control != null) {
-            updateChannelStates(control);
+            // newly linked item has no state yet
+            updateChannelStates(control, true);
         }
     }
 
@@ -210,17 +363,29 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
             InetAddress ip = InetAddress.getByName(cfg.host);
 
             // check if server does not need to be created from scratch
-            if (server != null && !server.isChanged(ip, cfg.port, cfg.user, cfg.password)) {
+            if (server != null && !server.isChanged(ip, cfg.port, cfg.user, cfg.password, cfg.eventQueueSize)) {
                 server.update(cfg.firstConDelay, cfg.keepAlivePeriod, cfg.connectErrDelay, cfg.responseTimeout,
-                        cfg.userErrorDelay, cfg.comErrorDelay, cfg.maxBinMsgSize, cfg.maxTextMsgSize);
+                        cfg.userErrorDelay, cfg.comErrorDelay, cfg.maxBinMsgSize, cfg.maxTextMsgSize,
+                        cfg.conflateUpdates, cfg.eventQueueWait, cfg.commandConnection, cfg.httpFallback,
+                        cfg.tokenAuthentication);
             } else {
                 if (server != null) {
                     server.stop();
                 }
-                server = new LxServer(ip, cfg.port, cfg.user, cfg.password);
+                server = new LxServer(ip, cfg.port, cfg.user, cfg.password, cfg.eventQueueSize);
+                // channels will be compared with all controls of the new server
+                controls.clear();
+                controlChannels.clear();
+                cancelTrailingUpdates();
+                bindings.clear();
+                routes.clear();
                 server.addListener(this);
+                server.setDataFolder(ConfigConstants.getUserDataFolder() + File.separator + "loxone",
+                        getThing().getUID().getId());
                 server.update(cfg.firstConDelay, cfg.keepAlivePeriod, cfg.connectErrDelay, cfg.responseTimeout,
-                        cfg.userErrorDelay, cfg.comErrorDelay, cfg.maxBinMsgSize, cfg.maxTextMsgSize);
+                        cfg.userErrorDelay, cfg.comErrorDelay, cfg.maxBinMsgSize, cfg.maxTextMsgSize,
+                        cfg.conflateUpdates, cfg.eventQueueWait, cfg.commandConnection, cfg.httpFallback,
+                        cfg.tokenAuthentication);
                 server.start();
             }
         } catch (UnknownHostException e) {
@@ -229,34 +394,125 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
     }
 
     @Override
-    public void onNewConfig(LxServer server) {
-        logger.trace("Processing new configuration");
+    public void onNewConfig(LxServer server, LxConfigDelta delta) {
+        logger.trace("Processing new configuration: {}", delta);
         Thing thing = getThing();
-        thing.setProperty(MINISERVER_PROPERTY_MINISERVER_NAME, server.getMiniserverName());
-        thing.setProperty(MINISERVER_PROPERTY_SERIAL, server.getSerial());
-        thing.setProperty(MINISERVER_PROPERTY_PROJECT_NAME, server.getProjectName());
-        thing.setProperty(MINISERVER_PROPERTY_CLOUD_ADDRESS, server.getCloudAddress());
+        setProperty(thing, MINISERVER_PROPERTY_MINISERVER_NAME, server.getMiniserverName());
+        setProperty(thing, MINISERVER_PROPERTY_SERIAL, server.getSerial());
+        setProperty(thing, MINISERVER_PROPERTY_PROJECT_NAME, server.getProjectName());
+        setProperty(thing, MINISERVER_PROPERTY_CLOUD_ADDRESS, server.getCloudAddress());
         // set location only the first time after discovery
         if (thing.getLocation() == null) {
             thing.setLocation(server.getLocation());
         }
 
-        ArrayList<Channel> channels = new ArrayList<Channel>();
-        ThingBuilder builder = editThing();
-        controls.clear();
-
-        logger.trace("Building new channels ({} controls)", server.getControls().size());
-        for (LxControl control : server.getControls().values()) {
-            List<Channel> newChannels = createChannelsForControl(control);
-            if (newChannels != null) {
-                channels.addAll(newChannels);
-                for (Channel channel : newChannels) {
-                    ChannelUID id = channel.getUID();
-                    controls.put(id, control);
+        // first configuration received by this handler is compared with all channels of the thing,
+        // next configurations only with channels of changed controls
+        boolean full = controls.isEmpty();
+        Collection<LxControl> updated;
+        if (full) {
+            updated = server.getControls().values();
+        } else {
+            updated = new ArrayList<>(delta.getAdded());
+            updated.addAll(delta.getChanged());
+            for (LxControl control : delta.getRemoved()) {
+                removeControl(control);
+            }
+        }
+        updateChannels(updated);
+    }
+
+    /**
+     * Creates channels for controls and compares them with channels of the thing. Thing is updated only if any of its
+     * channels has to be added, removed or changed. Channels of controls that do not exist anymore are removed.
+     *
+     * @param updated
+     *            controls to create channels for
+     */
+    private void updateChannels(Collection<LxControl> updated) {
+        Thing thing = getThing();
+        logger.trace("Building channels ({} controls)", updated.size());
+        Map<ChannelUID, Channel> newChannels = new LinkedHashMap<>();
+        for (LxControl control : updated) {
+            List<Channel> channels = createChannelsForControl(control);
+            List<ChannelUID> channelIds = new ArrayList<>(channels != null ? channels.size() : 0);
+            if (channels != null) {
+                for (Channel channel : channels) {
+                    newChannels.put(channel.getUID(), channel);
+                    channelIds.add(channel.getUID());
+                    LxControl previousControl = controls.put(channel.getUID(), control);
+                    if (previousControl != null && previousControl != control) {
+                        // control object replaced by a new configuration
+                        removeControl(previousControl);
+                    }
                 }
             }
+            ControlKey key = new ControlKey(control);
+            List<ChannelUID> previousIds = controlChannels.put(key, channelIds);
+            if (previousIds != null) {
+                for (ChannelUID id : previousIds) {
+                    if (!channelIds.contains(id) && controls.remove(id, control)) {
+                        routes.remove(id);
+                    }
+                }
+            }
+            ChannelUID channelId = getChannelIdForControl(control, 0);
+            CommandRoute route = createCommandRoute(control);
+            if (route != null) {
+                routes.put(channelId, route);
+            } else {
+                routes.remove(channelId);
+            }
+            Function<LxControl, State> converter = getStateConverter(control);
+            ChannelBinding binding = null;
+            if (converter != null) {
+                Channel channel = thing.getChannel(channelId.getId());
+                Throttle throttle = null;
+                if (control instanceof LxControlInfoOnlyAnalog) {
+                    throttle = createThrottle(channel);
+                }
+                binding = new ChannelBinding(channelId, converter,
+                        getBooleanParameter(channel, CHANNEL_PARAM_SKIP_UNCHANGED, true), throttle);
+            }
+            ChannelBinding previous = binding != null ? bindings.put(key, binding) : bindings.remove(key);
+            if (previous != null) {
+                cancelTrailingUpdate(previous);
+            }
+        }
+
+        logger.trace("Reconciling channels");
+        boolean changed = false;
+        List<Channel> channels = new ArrayList<>(thing.getChannels().size() + newChannels.size());
+        for (Channel channel : thing.getChannels()) {
+            Channel newChannel = newChannels.remove(channel.getUID());
+            if (newChannel != null) {
+                if (isSameChannel(channel, newChannel)) {
+                    channels.add(channel);
+                } else {
+                    // keep configuration of the channel set by the user
+                    channels.add(ChannelBuilder.create(newChannel.getUID(), newChannel.getAcceptedItemType())
+                            .withType(newChannel.getChannelTypeUID()).withLabel(newChannel.getLabel())
+                            .withDescription(newChannel.getDescription())
+                            .withDefaultTags(newChannel.getDefaultTags())
+                            .withConfiguration(channel.getConfiguration()).build());
+                    changed = true;
+                }
+            } else if (!controls.containsKey(channel.getUID())) {
+                // control removed from the Miniserver
+                changed = true;
+            } else {
+                channels.add(channel);
+            }
+        }
+        if (!newChannels.isEmpty()) {
+            channels.addAll(newChannels.values());
+            changed = true;
         }
 
+        if (!changed) {
+            logger.trace("Channels not changed");
+            return;
+        }
         logger.trace("Sorting channels");
         channels.sort(new Comparator<Channel>() {
             @Override
@@ -266,13 +522,52 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
         });
 
         logger.trace("Updating thing");
+        ThingBuilder builder = editThing();
         builder.withChannels(channels);
         updateThing(builder.build());
+
+        Set<ChannelTypeUID> usedTypes = new HashSet<>();
+        usedTypes.add(switchTypeId);
+        usedTypes.add(roSwitchTypeId);
+        usedTypes.add(rollerTypeId);
+        usedTypes.add(infoTypeId);
+        for (Channel channel : channels) {
+            usedTypes.add(channel.getChannelTypeUID());
+        }
+        factory.releaseUnusedChannelTypes(thing.getUID(), usedTypes);
+    }
+
+    /**
+     * Forget channels, command routes and state binding of a control, which is not in the configuration anymore
+     *
+     * @param control
+     *            removed control
+     */
+    private void removeControl(LxControl control) {
+        ControlKey key = new ControlKey(control);
+        List<ChannelUID> channelIds = controlChannels.remove(key);
+        if (channelIds != null) {
+            for (ChannelUID id : channelIds) {
+                // channel may already belong to a new object of the same control
+                if (controls.remove(id, control)) {
+                    routes.remove(id);
+                }
+            }
+        }
+        ChannelBinding binding = bindings.remove(key);
+        if (binding != null) {
+            cancelTrailingUpdate(binding);
+        }
     }
 
     @Override
-    public void onControlStateUpdate(LxControl control) {
-        updateChannelStates(control);
+    public void onControlStateUpdate(LxControl control, Set<String> changedStates) {
+        if (control instanceof LxControlLightController && ((LxControlLightController) control).sceneNamesUpdated()) {
+            // scene names are options of the channel type, so the channel needs a new type - channels are updated
+            // only on the server thread, like for a new configuration, and not when a framework thread refreshes state
+            updateChannels(Collections.singletonList(control));
+        }
+        updateChannelStates(control, false);
     }
 
     @Override
@@ -325,9 +620,44 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
             server.stop();
             server = null;
         }
+        cancelTrailingUpdates();
         factory.removeChannelTypesForThing(getThing().getUID());
     }
 
+    /**
+     * Set thing's property, if its value is different than the current value
+     *
+     * @param thing
+     *            thing to set the property of
+     * @param name
+     *            name of the property
+     * @param value
+     *            new value of the property
+     */
+    private void setProperty(Thing thing, String name, String value) {
+        if (!Objects.equals(thing.getProperties().get(name), value)) {
+            thing.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Compare channel of the thing with a channel created for the current configuration of a control
+     *
+     * @param channel
+     *            existing channel
+     * @param newChannel
+     *            channel created for the control
+     * @return
+     *         true if channels are the same
+     */
+    private boolean isSameChannel(Channel channel, Channel newChannel) {
+        return Objects.equals(channel.getAcceptedItemType(), newChannel.getAcceptedItemType())
+                && Objects.equals(channel.getChannelTypeUID(), newChannel.getChannelTypeUID())
+                && Objects.equals(channel.getLabel(), newChannel.getLabel())
+                && Objects.equals(channel.getDescription(), newChannel.getDescription())
+                && Objects.equals(channel.getDefaultTags(), newChannel.getDefaultTags());
+    }
+
     private void addChannel(List<Channel> channels, String itemType, ChannelTypeUID typeId, ChannelUID channelId,
             String channelLabel, String channelDescription, Set<String> tags) {
         if (itemType != null && typeId != null && channelDescription != null) {
@@ -356,7 +686,6 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
                 control.getUuid().toString());
 
         String label;
-        String controlUuid = control.getUuid().toString();
         ChannelUID id = getChannelIdForControl(control, 0);
 
         List<Channel> channels = new ArrayList<Channel>();
@@ -395,17 +724,18 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
             addChannel(channels, "Switch", roSwitchTypeId, id, label, "Digital virtual state", tags);
         } else if (control instanceof LxControlInfoOnlyAnalog) {
             LxControlInfoOnlyAnalog info = (LxControlInfoOnlyAnalog) control;
-            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", label, "Analog virtual state",
-                    info.getFormatString(), true, null, 0, controlUuid);
+            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", "Analog virtual state",
+                    "Analog virtual state", info.getFormatString(), true, null, 0, CHANNEL_CONFIG_ANALOG);
             addChannel(channels, "Number", typeId, id, label, "Analog virtual state", tags);
         } else if (control instanceof LxControlLightController) {
-            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", label, "Light controller", null,
-                    false, ((LxControlLightController) control).getSceneNames(),
-                    (LxControlLightController.NUM_OF_SCENES - 1), controlUuid);
+            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", "Light controller",
+                    "Light controller", null, false, ((LxControlLightController) control).getSceneNames(),
+                    (LxControlLightController.NUM_OF_SCENES - 1), CHANNEL_CONFIG_STATE);
             addChannel(channels, "Number", typeId, id, label, "Light controller", tags);
         } else if (control instanceof LxControlRadio) {
-            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", label, "Radio button", null,
-                    false, ((LxControlRadio) control).getOutputs(), LxControlRadio.MAX_RADIO_OUTPUTS, controlUuid);
+            ChannelTypeUID typeId = addNewChannelType(control.getTypeName(), "Number", "Radio button", "Radio button",
+                    null, false, ((LxControlRadio) control).getOutputs(), LxControlRadio.MAX_RADIO_OUTPUTS,
+                    CHANNEL_CONFIG_STATE);
             addChannel(channels, "Number", typeId, id, label, "Radio button", tags);
         } else if (control instanceof LxControlTextState) {
             addChannel(channels, "String", infoTypeId, id, label, "Text state", tags);
@@ -418,60 +748,293 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
      *
      * @param control
      *            control to update states for
+     * @param force
+     *            true to publish states even if they are the same as last published
      */
-    private void updateChannelStates(LxControl control) {
-        ChannelUID channelId = getChannelIdForControl(control, 0);
+    private void updateChannelStates(LxControl control, boolean force) {
+        ChannelBinding binding = bindings.get(new ControlKey(control));
+        if (binding != null) {
+            State state = binding.converter.apply(control);
+            if (state != null) {
+                if (binding.throttle != null) {
+                    updateThrottledState(binding, control, state, force);
+                } else if (force || !binding.skipUnchanged || !state.equals(binding.lastState)) {
+                    binding.lastState = state;
+                    updateState(binding.channelId, state);
+                }
+            }
+        }
+    }
 
-        if (control instanceof LxControlSwitch) {
-            double value = ((LxControlSwitch) control).getState();
-            if (value == 1.0) {
-                updateState(channelId, OnOffType.ON);
-            } else if (value == 0) {
-                updateState(channelId, OnOffType.OFF);
+    /**
+     * Update state of a channel with throttled updates. If the state can't be published now, but can be published
+     * later, a trailing update is scheduled.
+     *
+     * @param binding
+     *            binding of the control to the channel
+     * @param control
+     *            control to update state for
+     * @param state
+     *            new state of the channel
+     * @param force
+     *            true to publish the state regardless of the throttling limits
+     */
+    private void updateThrottledState(ChannelBinding binding, LxControl control, State state, boolean force) {
+        Throttle throttle = binding.throttle;
+        synchronized (throttle) {
+            if (!force && binding.skipUnchanged && state.equals(binding.lastState)) {
+                return;
             }
-        } else if (control instanceof LxControlJalousie) {
-            double value = ((LxControlJalousie) control).getPosition();
-            if (value >= 0 && value <= 1) {
-                // state UP or DOWN from Loxone indicates blinds are moving up or down
-                // state UP in openHAB means blinds are fully up (0%) and DOWN means fully down (100%)
-                // so we will update only position and not up or down states
-                updateState(channelId, new PercentType((int) (value * 100)));
+            long now = System.currentTimeMillis();
+            throttle.lastReceived = now;
+            long delay = force ? 0 : throttle.getPublishDelay(binding.lastState, state, now);
+            if (delay == 0) {
+                throttle.cancel();
+                throttle.lastPublished = now;
+                binding.lastState = state;
+                updateState(binding.channelId, state);
+            } else if (delay > 0) {
+                scheduleTrailingUpdate(binding, control, delay);
             }
-        } else if (control instanceof LxControlInfoOnlyDigital) {
-            double value = ((LxControlInfoOnlyDigital) control).getValue();
-            if (value == 0) {
-                updateState(channelId, OnOffType.OFF);
-            } else if (value == 1.0) {
-                updateState(channelId, OnOffType.ON);
+        }
+    }
+
+    /**
+     * Schedule publishing of a throttled channel's state, unless it is already scheduled at the same time or earlier.
+     * Must be called with throttle's lock held.
+     *
+     * @param binding
+     *            binding of the control to the channel
+     * @param control
+     *            control to update state for
+     * @param delay
+     *            time after which the state can be published (milliseconds)
+     */
+    private void scheduleTrailingUpdate(ChannelBinding binding, LxControl control, long delay) {
+        Throttle throttle = binding.throttle;
+        if (throttle.closed) {
+            return;
+        }
+        if (throttle.trailing != null) {
+            if (throttle.trailing.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                return;
+            }
+            throttle.cancel();
+        }
+        throttle.trailing = scheduler.schedule(() -> publishTrailingUpdate(binding, control), delay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publish the current state of a throttled channel, if it was not published yet and the throttling limits allow
+     * it. If the limits allow it only later, the update is postponed.
+     *
+     * @param binding
+     *            binding of the control to the channel
+     * @param control
+     *            control to update state for
+     */
+    private void publishTrailingUpdate(ChannelBinding binding, LxControl control) {
+        Throttle throttle = binding.throttle;
+        synchronized (throttle) {
+            if (throttle.closed) {
+                return;
+            }
+            throttle.trailing = null;
+            State state = binding.converter.apply(control);
+            if (state == null || state.equals(binding.lastState)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long delay = throttle.getPublishDelay(binding.lastState, state, now);
+            if (delay == 0) {
+                throttle.lastPublished = now;
+                binding.lastState = state;
+                updateState(binding.channelId, state);
+            } else if (delay > 0) {
+                scheduleTrailingUpdate(binding, control, delay);
+            }
+        }
+    }
+
+    private void cancelTrailingUpdate(ChannelBinding binding) {
+        if (binding.throttle != null) {
+            synchronized (binding.throttle) {
+                binding.throttle.close();
             }
+        }
+    }
+
+    private void cancelTrailingUpdates() {
+        for (ChannelBinding binding : bindings.values()) {
+            cancelTrailingUpdate(binding);
+        }
+    }
+
+    /**
+     * Create limits of publishing states of an analog channel from its configuration
+     *
+     * @param channel
+     *            channel to create the limits for (can be null)
+     * @return
+     *         limits of publishing states or null if channel's states are not limited
+     */
+    private static Throttle createThrottle(Channel channel) {
+        double deadband = getNumberParameter(channel, CHANNEL_PARAM_DEADBAND);
+        double deadbandPercent = getNumberParameter(channel, CHANNEL_PARAM_DEADBAND_PERCENT);
+        long minInterval = (long) getNumberParameter(channel, CHANNEL_PARAM_MIN_INTERVAL);
+        long maxInterval = (long) getNumberParameter(channel, CHANNEL_PARAM_MAX_INTERVAL);
+        long quietInterval = (long) getNumberParameter(channel, CHANNEL_PARAM_QUIET_INTERVAL,
+                DEFAULT_QUIET_INTERVAL);
+        if (deadband <= 0 && deadbandPercent <= 0 && minInterval <= 0) {
+            // without these limits all values are published anyway
+            return null;
+        }
+        return new Throttle(deadband, deadbandPercent, Math.max(minInterval, 0), Math.max(maxInterval, 0),
+                Math.max(quietInterval, 0));
+    }
+
+    /**
+     * Select a function that converts control's state into a state of its channel
+     *
+     * @param control
+     *            control to find the converter for
+     * @return
+     *         converter or null if control has no channel with a state
+     */
+    private static Function<LxControl, State> getStateConverter(LxControl control) {
+        if (control instanceof LxControlSwitch) {
+            return SWITCH_STATE;
+        } else if (control instanceof LxControlJalousie) {
+            return JALOUSIE_STATE;
+        } else if (control instanceof LxControlInfoOnlyDigital) {
+            return DIGITAL_STATE;
         } else if (control instanceof LxControlInfoOnlyAnalog) {
-            updateState(channelId, new DecimalType(((LxControlInfoOnlyAnalog) control).getValue()));
+            return ANALOG_STATE;
         } else if (control instanceof LxControlLightController) {
-            LxControlLightController controller = (LxControlLightController) control;
-            int value = controller.getCurrentScene();
-            if (value >= 0 && value < LxControlLightController.NUM_OF_SCENES) {
-                updateState(channelId, new DecimalType(value));
-            }
-            if (controller.sceneNamesUpdated()) {
-                createChannelsForControl(control);
+            return SCENE_STATE;
+        } else if (control instanceof LxControlRadio) {
+            return RADIO_STATE;
+        } else if (control instanceof LxControlTextState) {
+            return TEXT_STATE;
+        }
+        return null;
+    }
+
+    /**
+     * Create a route of commands accepted by control's channel to operations on the control
+     *
+     * @param control
+     *            control to create the route for
+     * @return
+     *         route of commands or null if control does not accept commands
+     */
+    private static CommandRoute createCommandRoute(LxControl control) {
+        CommandRoute route = new CommandRoute();
+        if (control instanceof LxControlSwitch) {
+            LxControlSwitch switchControl = (LxControlSwitch) control;
+            if (control instanceof LxControlPushbutton) {
+                route.values.put(OnOffType.ON, ((LxControlPushbutton) control)::pulse);
+            } else {
+                route.values.put(OnOffType.ON, switchControl::on);
             }
+            route.values.put(OnOffType.OFF, switchControl::off);
+        } else if (control instanceof LxControlJalousie) {
+            LxControlJalousie jalousie = (LxControlJalousie) control;
+            route.values.put(UpDownType.UP, jalousie::fullUp);
+            route.values.put(UpDownType.DOWN, jalousie::fullDown);
+            route.values.put(StopMoveType.STOP, jalousie::stop);
+            route.types.put(PercentType.class,
+                    command -> jalousie.moveToPosition(((PercentType) command).doubleValue() / 100));
+        } else if (control instanceof LxControlLightController) {
+            LxControlLightController controller = (LxControlLightController) control;
+            route.values.put(OnOffType.ON, controller::allOn);
+            route.values.put(OnOffType.OFF, controller::allOff);
+            route.values.put(UpDownType.UP, controller::nextScene);
+            route.values.put(UpDownType.DOWN, controller::previousScene);
+            Function<Command, CompletableFuture<Void>> setScene = command -> controller
+                    .setScene(((DecimalType) command).intValue());
+            route.types.put(DecimalType.class, setScene);
+            route.types.put(PercentType.class, setScene);
         } else if (control instanceof LxControlRadio) {
             LxControlRadio radio = (LxControlRadio) control;
-            int output = radio.getActiveOutput();
-            if (output >= 0 && output <= LxControlRadio.MAX_RADIO_OUTPUTS) {
-                updateState(channelId, new DecimalType(output));
+            route.values.put(OnOffType.OFF, () -> radio.setOutput(0));
+            Function<Command, CompletableFuture<Void>> setOutput = command -> radio
+                    .setOutput(((DecimalType) command).intValue());
+            route.types.put(DecimalType.class, setOutput);
+            route.types.put(PercentType.class, setOutput);
+        } else {
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Get a boolean parameter from channel's configuration
+     *
+     * @param channel
+     *            channel to get the parameter of (can be null)
+     * @param name
+     *            name of the parameter
+     * @param defaultValue
+     *            value used when channel or parameter does not exist
+     * @return
+     *         value of the parameter
+     */
+    private static boolean getBooleanParameter(Channel channel, String name, boolean defaultValue) {
+        if (channel != null) {
+            Object value = channel.getConfiguration().get(name);
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            } else if (value instanceof String) {
+                return Boolean.parseBoolean((String) value);
             }
-        } else if (control instanceof LxControlTextState) {
-            LxControlTextState state = (LxControlTextState) control;
-            String value = state.getText();
-            if (value != null) {
-                updateState(channelId, new StringType(value));
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get a numeric parameter from channel's configuration
+     *
+     * @param channel
+     *            channel to get the parameter of (can be null)
+     * @param name
+     *            name of the parameter
+     * @return
+     *         value of the parameter or 0 if channel or parameter does not exist
+     */
+    private static double getNumberParameter(Channel channel, String name) {
+        return getNumberParameter(channel, name, 0);
+    }
+
+    private static double getNumberParameter(Channel channel, String name, double defaultValue) {
+        if (channel != null) {
+            Object value = channel.getConfiguration().get(name);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else if (value instanceof String) {
+                try {
+                    return Double.parseDouble((String) value);
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
             }
         }
+        return defaultValue;
+    }
+
+    private static State toOnOff(double value) {
+        if (value == 1.0) {
+            return OnOffType.ON;
+        } else if (value == 0) {
+            return OnOffType.OFF;
+        }
+        return null;
     }
 
     /**
-     * Create and register a new channel type
+     * Get a channel type with given content from the factory, which is the channel type provider. Channels with the
+     * same type content share one channel type.
      *
      * @param controlType
      *            type of Loxone control (e.g. switch, jalousie)
@@ -489,30 +1052,21 @@ public class LoxoneMiniserverHandler extends BaseThingHandler implements LxServe
      *            map of options for drop down lists (can be null)
      * @param lastOption
      *            index of last option
-     * @param controlUuid
-     *            UUID of Loxone control object (can be null if channel type is generic)
+     * @param configDescriptionURI
+     *            URI of description of configuration parameters of the channel
      * @return
-     *         channel type ID of newly created type
+     *         channel type ID
      */
     private ChannelTypeUID addNewChannelType(String controlType, String itemType, String label, String description,
-            String format, boolean readOnly, Map<String, String> options, int lastOption, String controlUuid) {
-        logger.trace("Creating a new channel type for {}, {}", controlType, itemType);
-
-        String name = getThing().getUID().getAsString() + ":" + controlType;
-        if (controlUuid != null) {
-            name += ":" + controlUuid;
-        }
-        ChannelTypeUID typeId = new ChannelTypeUID(name);
-        ChannelType type = new ChannelType(typeId, false, itemType, label, description, null, null,
-                buildStateDescription(format, readOnly, options, lastOption), null);
-        factory.removeChannelType(typeId);
-        factory.addChannelType(type);
-        return typeId;
+            String format, boolean readOnly, Map<String, String> options, int lastOption, URI configDescriptionURI) {
+        return factory.internChannelType(getThing().getUID(), controlType, itemType, label, description,
+                buildStateDescription(format, readOnly, options, lastOption), configDescriptionURI);
     }
 
     private ChannelTypeUID addNewChannelType(String controlType, String itemType, String label, String description,
             boolean readOnly) {
-        return addNewChannelType(controlType, itemType, label, description, null, readOnly, null, 0, null);
+        return addNewChannelType(controlType, itemType, label, description, null, readOnly, null, 0,
+                CHANNEL_CONFIG_STATE);
     }
 
     /**
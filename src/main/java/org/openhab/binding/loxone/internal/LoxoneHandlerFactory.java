@@ -8,12 +8,19 @@
  */
 package org.openhab.binding.loxone.internal;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.smarthome.config.discovery.DiscoveryServiceRegistry;
 import org.eclipse.smarthome.core.thing.Thing;
@@ -26,6 +33,8 @@ import org.eclipse.smarthome.core.thing.type.ChannelGroupTypeUID;
 import org.eclipse.smarthome.core.thing.type.ChannelType;
 import org.eclipse.smarthome.core.thing.type.ChannelTypeProvider;
 import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
+import org.eclipse.smarthome.core.types.StateDescription;
+import org.eclipse.smarthome.core.types.StateOption;
 import org.eclipse.smarthome.io.transport.upnp.UpnpIOService;
 import org.openhab.binding.loxone.LoxoneBindingConstants;
 import org.openhab.binding.loxone.handler.LoxoneMiniserverHandler;
@@ -43,8 +52,10 @@ public class LoxoneHandlerFactory extends BaseThingHandlerFactory implements Cha
     private UpnpIOService upnpIOService;
     @SuppressWarnings("unused")
     private DiscoveryServiceRegistry discoveryServiceRegistry;
-    private List<ChannelType> channelTypes = new CopyOnWriteArrayList<ChannelType>();
-    private List<ChannelGroupType> channelGroupTypes = new CopyOnWriteArrayList<ChannelGroupType>();
+    private Map<ChannelTypeUID, ChannelType> channelTypes = new ConcurrentHashMap<>();
+    private Map<ChannelGroupTypeUID, ChannelGroupType> channelGroupTypes = new ConcurrentHashMap<>();
+    // channel types used by each thing, to remove them when no thing uses them
+    private Map<ThingUID, Set<ChannelTypeUID>> thingChannelTypes = new HashMap<>();
 
     public static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Sets
             .newHashSet(LoxoneBindingConstants.THING_TYPE_MINISERVER);
@@ -86,67 +97,150 @@ public class LoxoneHandlerFactory extends BaseThingHandlerFactory implements Cha
 
     @Override
     public Collection<ChannelType> getChannelTypes(Locale locale) {
-        return channelTypes;
+        return channelTypes.values();
     }
 
     @Override
     public ChannelType getChannelType(ChannelTypeUID channelTypeUID, Locale locale) {
-        for (ChannelType channelType : channelTypes) {
-            if (channelType.getUID().equals(channelTypeUID)) {
-                return channelType;
-            }
-        }
-        return null;
+        return channelTypes.get(channelTypeUID);
     }
 
     @Override
     public Collection<ChannelGroupType> getChannelGroupTypes(Locale locale) {
-        return channelGroupTypes;
+        return channelGroupTypes.values();
     }
 
     @Override
     public ChannelGroupType getChannelGroupType(ChannelGroupTypeUID channelGroupTypeUID, Locale locale) {
-        for (ChannelGroupType channelGroupType : channelGroupTypes) {
-            if (channelGroupType.getUID().equals(channelGroupTypeUID)) {
-                return channelGroupType;
-            }
-        }
-        return null;
+        return channelGroupTypes.get(channelGroupTypeUID);
     }
 
     public void addChannelGroupType(ChannelGroupType type) {
-        channelGroupTypes.add(type);
+        channelGroupTypes.put(type.getUID(), type);
     }
 
     public void removeChannelGroupType(ChannelGroupType type) {
-        channelGroupTypes.remove(type);
+        channelGroupTypes.remove(type.getUID());
     }
 
     public void addChannelType(ChannelType type) {
-        channelTypes.add(type);
+        channelTypes.put(type.getUID(), type);
+    }
+
+    /**
+     * Get a channel type with given content, creating and registering it if there is no such type yet. Channel types
+     * with the same content are shared by all channels and things, which use them. A type is registered until no
+     * thing uses it anymore.
+     *
+     * @param thingUID
+     *            UID of the thing that uses the channel type
+     * @param controlType
+     *            type of Loxone control (e.g. switch, jalousie), used as a part of channel type UID
+     * @param itemType
+     *            type of openHAB item
+     * @param label
+     *            label for the channel type
+     * @param description
+     *            description of the channel type
+     * @param state
+     *            state description of the channel type
+     * @param configDescriptionURI
+     *            URI of description of configuration parameters of channels of this type
+     * @return
+     *         UID of the channel type
+     */
+    public synchronized ChannelTypeUID internChannelType(ThingUID thingUID, String controlType, String itemType,
+            String label, String description, StateDescription state, URI configDescriptionURI) {
+        ChannelTypeUID uid = new ChannelTypeUID(LoxoneBindingConstants.BINDING_ID,
+                controlType + "-" + contentHash(itemType, label, description, state, configDescriptionURI));
+        channelTypes.computeIfAbsent(uid, id -> new ChannelType(id, false, itemType, label, description, null, null,
+                state, configDescriptionURI));
+        thingChannelTypes.computeIfAbsent(thingUID, id -> new HashSet<>()).add(uid);
+        return uid;
+    }
+
+    /**
+     * Release channel types that a thing does not use anymore
+     *
+     * @param thingUID
+     *            UID of the thing
+     * @param used
+     *            UIDs of channel types the thing still uses
+     */
+    public synchronized void releaseUnusedChannelTypes(ThingUID thingUID, Collection<ChannelTypeUID> used) {
+        Set<ChannelTypeUID> types = thingChannelTypes.get(thingUID);
+        if (types != null) {
+            List<ChannelTypeUID> unused = new ArrayList<>();
+            for (ChannelTypeUID id : types) {
+                if (!used.contains(id)) {
+                    unused.add(id);
+                }
+            }
+            types.removeAll(unused);
+            removeIfNotUsed(unused);
+        }
     }
 
     public void removeChannelType(ChannelType type) {
-        channelTypes.remove(type);
+        removeChannelType(type.getUID());
     }
 
-    public void removeChannelType(ChannelTypeUID id) {
-        List<ChannelType> removes = new ArrayList<ChannelType>();
-        for (ChannelType c : channelTypes) {
-            if (c.getUID().getAsString().equals(id.getAsString())) {
-                removes.add(c);
+    public synchronized void removeChannelType(ChannelTypeUID id) {
+        channelTypes.remove(id);
+        for (Set<ChannelTypeUID> types : thingChannelTypes.values()) {
+            types.remove(id);
+        }
+    }
+
+    public synchronized void removeChannelTypesForThing(ThingUID uid) {
+        Set<ChannelTypeUID> types = thingChannelTypes.remove(uid);
+        if (types != null) {
+            removeIfNotUsed(types);
+        }
+    }
+
+    private void removeIfNotUsed(Collection<ChannelTypeUID> ids) {
+        for (ChannelTypeUID id : ids) {
+            boolean used = false;
+            for (Set<ChannelTypeUID> types : thingChannelTypes.values()) {
+                if (types.contains(id)) {
+                    used = true;
+                    break;
+                }
+            }
+            if (!used) {
+                channelTypes.remove(id);
             }
         }
-        channelTypes.removeAll(removes);
     }
 
-    public void removeChannelTypesForThing(ThingUID uid) {
-        List<ChannelType> removes = new ArrayList<ChannelType>();
-        for (ChannelType c : channelTypes) {
-            if (c.getUID().getAsString().startsWith(uid.getAsString())) {
-                removes.add(c);
+    /**
+     * Calculate a hash of channel type content. Options are sorted, so their order does not matter.
+     *
+     * @return
+     *         hash in hexadecimal form
+     */
+    private String contentHash(String itemType, String label, String description, StateDescription state,
+            URI configDescriptionURI) {
+        StringBuilder content = new StringBuilder();
+        content.append(itemType).append('\n').append(label).append('\n').append(description).append('\n')
+                .append(configDescriptionURI);
+        if (state != null) {
+            content.append('\n').append(state.getMinimum()).append('\n').append(state.getMaximum()).append('\n')
+                    .append(state.getStep()).append('\n').append(state.getPattern()).append('\n')
+                    .append(state.isReadOnly());
+            List<String> options = new ArrayList<>();
+            if (state.getOptions() != null) {
+                for (StateOption option : state.getOptions()) {
+                    options.add(option.getValue() + "=" + option.getLabel());
+                }
+            }
+            Collections.sort(options);
+            for (String option : options) {
+                content.append('\n').append(option);
             }
         }
-        channelTypes.removeAll(removes);
+        return UUID.nameUUIDFromBytes(content.toString().getBytes(StandardCharsets.UTF_8)).toString().replace("-",
+                "");
     }
 }